@@ -1,12 +1,19 @@
+import java.io.File;
 import java.io.IOException;
-import java.util.zip.DataFormatException;
+import java.util.Arrays;
 
 import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
 import javax.swing.UnsupportedLookAndFeelException;
 
+import com.tycoon177.chip8.analysis.Disassembler;
+import com.tycoon177.chip8.aot.AotCompiler;
+import com.tycoon177.chip8.batch.BatchRunner;
+import com.tycoon177.chip8.batch.ReplayRunner;
+import com.tycoon177.chip8.bench.Benchmarks;
 import com.tycoon177.chip8.system.Computer;
 import com.tycoon177.chip8.system.Rom;
+import com.tycoon177.chip8.system.Tracer;
 import com.tycoon177.chip8.ui.SystemDisplay;
 
 /**
@@ -16,13 +23,55 @@ import com.tycoon177.chip8.ui.SystemDisplay;
  */
 public class Launcher {
 
-	public static void main(String[] args) throws DataFormatException, IOException {
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length > 0 && args[0].equals("--batch")) {
+			BatchRunner.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+		if (args.length > 0 && args[0].equals("--replay")) {
+			ReplayRunner.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+		if (args.length > 1 && args[0].equals("--dump-trace")) {
+			Tracer.dump(new File(args[1]), System.out);
+			return;
+		}
+		if (args.length > 0 && args[0].equals("--disassemble")) {
+			Disassembler.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+		if (args.length > 0 && args[0].equals("--compile")) {
+			AotCompiler.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+		if (args.length > 0 && args[0].equals("--bench")) {
+			Benchmarks.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
 		try {
 			UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
 		} catch (ClassNotFoundException | InstantiationException | IllegalAccessException | UnsupportedLookAndFeelException e1) {
 			e1.printStackTrace();
 		}
 		Computer comp = new Computer();
+		comp.setRewindSeconds(10);
+		comp.publishMetrics();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--trace") && i + 1 < args.length) {
+				Tracer tracer = new Tracer(new File(args[++i]), 1 << 16);
+				comp.setTracer(tracer);
+				Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+					try {
+						tracer.close();
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				}));
+			} else if (args[i].equals("--profile")) {
+				comp.setProfiling(true);
+				comp.getProfiler().startDump(System.out, 5);
+			}
+		}
 		SwingUtilities.invokeLater(new Runnable() {
 			@Override
 			public void run() {
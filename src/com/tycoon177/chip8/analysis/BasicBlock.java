@@ -0,0 +1,162 @@
+package com.tycoon177.chip8.analysis;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.tycoon177.chip8.system.Instruction;
+
+/**
+ * A straight line run of instructions in a rom that is only entered at the
+ * top and only left at the bottom. Blocks end wherever the interpreter's own
+ * blocks end, and also before any instruction that something jumps to.
+ * 
+ * @author Benjamin McHone
+ *
+ */
+public class BasicBlock {
+	private int start;
+	private Instruction[] instructions;
+	private List<Edge> successors;
+	private List<BasicBlock> predecessors;
+	private boolean indirectJump;
+	private boolean unknownStore;
+	private boolean modified;
+	// The value of I when the block is entered, see ControlFlowGraph
+	int entryI;
+
+	/**
+	 * Creates a block
+	 * 
+	 * @param start
+	 *            The address of the first instruction
+	 * @param instructions
+	 *            The instructions in the block, in order
+	 */
+	BasicBlock(int start, Instruction[] instructions) {
+		this.start = start;
+		this.instructions = instructions;
+		successors = new ArrayList<>();
+		predecessors = new ArrayList<>();
+	}
+
+	/**
+	 * Gets the address of the first instruction
+	 * 
+	 * @return The start address
+	 */
+	public int getStart() {
+		return start;
+	}
+
+	/**
+	 * Gets the address just past the last byte of the block
+	 * 
+	 * @return The end address
+	 */
+	public int getEnd() {
+		return start + instructions.length * 2;
+	}
+
+	/**
+	 * Gets the instructions in the block
+	 * 
+	 * @return The instructions
+	 */
+	public Instruction[] getInstructions() {
+		return instructions;
+	}
+
+	/**
+	 * Gets the last instruction, which decides where control goes next
+	 * 
+	 * @return The last instruction
+	 */
+	public Instruction getLast() {
+		return instructions[instructions.length - 1];
+	}
+
+	/**
+	 * Gets the ways control can leave the block
+	 * 
+	 * @return The outgoing edges
+	 */
+	public List<Edge> getSuccessors() {
+		return successors;
+	}
+
+	/**
+	 * Gets the blocks that control can come from
+	 * 
+	 * @return The blocks with an edge to this one
+	 */
+	public List<BasicBlock> getPredecessors() {
+		return predecessors;
+	}
+
+	/**
+	 * Gets whether the block ends in a BNNN jump, whose target depends on V0
+	 * and cannot be known without running the rom
+	 * 
+	 * @return Whether the block ends in an indirect jump
+	 */
+	public boolean isIndirectJump() {
+		return indirectJump;
+	}
+
+	/**
+	 * Marks the block as ending in an indirect jump
+	 */
+	void setIndirectJump() {
+		indirectJump = true;
+	}
+
+	/**
+	 * Gets whether the block writes memory through an I that could not be
+	 * worked out, so it may write over code
+	 * 
+	 * @return Whether the block has a store to an unknown address
+	 */
+	public boolean hasUnknownStore() {
+		return unknownStore;
+	}
+
+	/**
+	 * Marks the block as storing to an unknown address
+	 */
+	void setUnknownStore() {
+		unknownStore = true;
+	}
+
+	/**
+	 * Gets whether the rom is known to write over the instructions of this
+	 * block
+	 * 
+	 * @return Whether the block is self modifying code
+	 */
+	public boolean isModified() {
+		return modified;
+	}
+
+	/**
+	 * Marks the block as written over
+	 */
+	void setModified() {
+		modified = true;
+	}
+
+	/**
+	 * Checks if the block covers a byte of memory
+	 * 
+	 * @param address
+	 *            The address to check
+	 * @return Whether the address is part of the block
+	 */
+	public boolean covers(int address) {
+		return address >= start && address < getEnd();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("block 0x%03x-0x%03x", start, getEnd());
+	}
+}
@@ -0,0 +1,61 @@
+package com.tycoon177.chip8.analysis;
+
+/**
+ * A store instruction that writes over bytes that are also run as code
+ * 
+ * @author Benjamin McHone
+ *
+ */
+public class CodeWrite {
+	private int address;
+	private int start;
+	private int end;
+
+	/**
+	 * Creates a code write
+	 * 
+	 * @param address
+	 *            The address of the FX33 or FX55 doing the write
+	 * @param start
+	 *            The first address written
+	 * @param end
+	 *            The address just past the last one written
+	 */
+	CodeWrite(int address, int start, int end) {
+		this.address = address;
+		this.start = start;
+		this.end = end;
+	}
+
+	/**
+	 * Gets the address of the instruction doing the write
+	 * 
+	 * @return The address of the store
+	 */
+	public int getAddress() {
+		return address;
+	}
+
+	/**
+	 * Gets the first address written
+	 * 
+	 * @return The start of the written region
+	 */
+	public int getStart() {
+		return start;
+	}
+
+	/**
+	 * Gets the address just past the last one written
+	 * 
+	 * @return The end of the written region
+	 */
+	public int getEnd() {
+		return end;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("0x%03x writes 0x%03x-0x%03x", address, start, end);
+	}
+}
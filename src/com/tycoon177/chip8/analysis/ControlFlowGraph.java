@@ -0,0 +1,461 @@
+package com.tycoon177.chip8.analysis;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.tycoon177.chip8.system.Block;
+import com.tycoon177.chip8.system.Instruction;
+import com.tycoon177.chip8.system.Opcode;
+import com.tycoon177.chip8.system.Rom;
+
+/**
+ * Finds the code in a rom without running it and splits it into basic blocks
+ * joined by the jumps, calls and skips between them. Everything reachable from
+ * 0x200 is followed. BNNN jumps cannot be followed, so the blocks ending in
+ * them are flagged instead, as are the blocks that FX33 and FX55 write over.
+ * <p>
+ * To find those writes the value of I is followed through the graph. It is
+ * known when every way into a block sets it to the same ANNN, and unknown after
+ * FX1E, FX29, FX30 and on return from a call.
+ * 
+ * @author Benjamin McHone
+ *
+ */
+public class ControlFlowGraph {
+	/**
+	 * The address that roms are loaded at and start from
+	 */
+	public static final int ENTRY = 0x200;
+	private static final int MEMORY_SIZE = 0x1000;
+	// Values of I while it is followed through the graph
+	private static final int I_UNSET = -2;
+	private static final int I_UNKNOWN = -1;
+	private ByteBuffer data;
+	private int end;
+	// Whether an instruction starts at each address
+	private boolean[] starts;
+	private boolean[] leaders;
+	private TreeMap<Integer, BasicBlock> blocks;
+	// The most bytes any block covers
+	private int longest;
+	private List<CodeWrite> codeWrites;
+
+	/**
+	 * Builds the graph of a rom
+	 * 
+	 * @param rom
+	 *            The rom to look at
+	 */
+	public ControlFlowGraph(Rom rom) {
+		data = rom.getData();
+		end = ENTRY + rom.getLength();
+		starts = new boolean[MEMORY_SIZE];
+		leaders = new boolean[MEMORY_SIZE];
+		blocks = new TreeMap<>();
+		codeWrites = new ArrayList<>();
+		findCode();
+		buildBlocks();
+		findLoops(blocks.get(ENTRY), new boolean[MEMORY_SIZE], new boolean[MEMORY_SIZE]);
+		followI();
+	}
+
+	/**
+	 * Gets whether a whole instruction at an address lies inside the rom
+	 * 
+	 * @param address
+	 *            The address
+	 * @return Whether both bytes are part of the rom
+	 */
+	private boolean inRom(int address) {
+		return address >= ENTRY && address + 1 < end;
+	}
+
+	/**
+	 * Decodes the instruction at an address in the rom
+	 * 
+	 * @param address
+	 *            The address
+	 * @return The instruction
+	 */
+	private Instruction decode(int address) {
+		int offset = address - ENTRY;
+		return new Instruction((data.get(offset) & 0xff) << 8 | (data.get(offset + 1) & 0xff));
+	}
+
+	/**
+	 * Gets the edges leaving an instruction that ends a block
+	 * 
+	 * @param address
+	 *            The address of the instruction
+	 * @param instruction
+	 *            The instruction
+	 * @return The edges, which are empty for returns, indirect jumps and
+	 *         unknown opcodes
+	 */
+	private static List<Edge> branches(int address, Instruction instruction) {
+		List<Edge> edges = new ArrayList<>(2);
+		switch (instruction.getType()) {
+			case OPCODE_1NNN:
+				edges.add(new Edge(Edge.Kind.JUMP, instruction.getNNN()));
+				break;
+			case OPCODE_2NNN:
+				edges.add(new Edge(Edge.Kind.CALL, instruction.getNNN()));
+				edges.add(new Edge(Edge.Kind.FALLTHROUGH, address + 2));
+				break;
+			case OPCODE_3XNN:
+			case OPCODE_4XNN:
+			case OPCODE_5XY0:
+			case OPCODE_9XY0:
+			case OPCODE_EX9E:
+			case OPCODE_EXA1:
+				edges.add(new Edge(Edge.Kind.FALLTHROUGH, address + 2));
+				edges.add(new Edge(Edge.Kind.SKIP, address + 4));
+				break;
+			case OPCODE_FX0A:
+				edges.add(new Edge(Edge.Kind.FALLTHROUGH, address + 2));
+				break;
+			default:
+				// 00EE, BNNN and unknown opcodes go nowhere that is known
+				break;
+		}
+		return edges;
+	}
+
+	/**
+	 * Follows every path from the entry, marking where instructions start and
+	 * which of them begin a block
+	 */
+	private void findCode() {
+		ArrayDeque<Integer> pending = new ArrayDeque<>();
+		pending.add(ENTRY);
+		leaders[ENTRY] = true;
+		while (!pending.isEmpty()) {
+			int address = pending.poll();
+			if (!inRom(address) || starts[address]) {
+				continue;
+			}
+			starts[address] = true;
+			Instruction instruction = decode(address);
+			if (!Block.endsBlock(instruction.getType())) {
+				pending.add(address + 2);
+				continue;
+			}
+			for (Edge edge : branches(address, instruction)) {
+				if (edge.getTarget() < MEMORY_SIZE) {
+					leaders[edge.getTarget()] = true;
+					pending.add(edge.getTarget());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Cuts the code into blocks at the leaders and joins them with edges
+	 */
+	private void buildBlocks() {
+		for (int start = ENTRY; start < end; start++) {
+			if (!leaders[start] || !starts[start]) {
+				continue;
+			}
+			List<Instruction> instructions = new ArrayList<>();
+			int address = start;
+			List<Edge> edges;
+			while (true) {
+				Instruction instruction = decode(address);
+				instructions.add(instruction);
+				if (Block.endsBlock(instruction.getType())) {
+					edges = branches(address, instruction);
+					break;
+				}
+				address += 2;
+				if (!inRom(address) || leaders[address]) {
+					edges = new ArrayList<>(1);
+					if (inRom(address)) {
+						edges.add(new Edge(Edge.Kind.FALLTHROUGH, address));
+					}
+					break;
+				}
+			}
+			BasicBlock block = new BasicBlock(start, instructions.toArray(new Instruction[instructions.size()]));
+			if (block.getLast().getType() == Opcode.OPCODE_BNNN) {
+				block.setIndirectJump();
+			}
+			block.getSuccessors().addAll(edges);
+			blocks.put(start, block);
+			longest = Math.max(longest, block.getEnd() - start);
+		}
+		for (BasicBlock block : blocks.values()) {
+			for (Edge edge : block.getSuccessors()) {
+				BasicBlock target = blocks.get(edge.getTarget());
+				edge.setBlock(target);
+				if (target != null) {
+					target.getPredecessors().add(block);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Marks the edges that go back to a block still being followed from the
+	 * entry
+	 * 
+	 * @param block
+	 *            The block being followed
+	 * @param visited
+	 *            The blocks already followed, by start address
+	 * @param active
+	 *            The blocks on the current path, by start address
+	 */
+	private void findLoops(BasicBlock block, boolean[] visited, boolean[] active) {
+		if (block == null) {
+			return;
+		}
+		visited[block.getStart()] = true;
+		active[block.getStart()] = true;
+		for (Edge edge : block.getSuccessors()) {
+			BasicBlock target = edge.getBlock();
+			if (target == null) {
+				continue;
+			}
+			if (active[target.getStart()]) {
+				edge.setBackEdge();
+			} else if (!visited[target.getStart()]) {
+				findLoops(target, visited, active);
+			}
+		}
+		active[block.getStart()] = false;
+	}
+
+	/**
+	 * Works out the value of I at the start of every block, then finds the
+	 * stores that write over code
+	 */
+	private void followI() {
+		for (BasicBlock block : blocks.values()) {
+			block.entryI = I_UNSET;
+		}
+		BasicBlock entry = blocks.get(ENTRY);
+		if (entry == null) {
+			return;
+		}
+		entry.entryI = I_UNKNOWN;
+		ArrayDeque<BasicBlock> pending = new ArrayDeque<>();
+		pending.add(entry);
+		while (!pending.isEmpty()) {
+			BasicBlock block = pending.poll();
+			int i = runBlock(block, false);
+			for (Edge edge : block.getSuccessors()) {
+				BasicBlock target = edge.getBlock();
+				if (target == null) {
+					continue;
+				}
+				// A subroutine may have changed I by the time it returns
+				int incoming = block.getLast().getType() == Opcode.OPCODE_2NNN
+						&& edge.getKind() == Edge.Kind.FALLTHROUGH ? I_UNKNOWN : i;
+				int merged = target.entryI == I_UNSET || target.entryI == incoming ? incoming : I_UNKNOWN;
+				if (merged != target.entryI) {
+					target.entryI = merged;
+					pending.add(target);
+				}
+			}
+		}
+		for (BasicBlock block : blocks.values()) {
+			if (block.entryI != I_UNSET) {
+				runBlock(block, true);
+			}
+		}
+	}
+
+	/**
+	 * Follows I through a block
+	 * 
+	 * @param block
+	 *            The block
+	 * @param record
+	 *            Whether to record the stores the block makes
+	 * @return The value of I when the block is left
+	 */
+	private int runBlock(BasicBlock block, boolean record) {
+		int i = block.entryI;
+		int address = block.getStart();
+		for (Instruction instruction : block.getInstructions()) {
+			switch (instruction.getType()) {
+				case OPCODE_ANNN:
+					i = instruction.getNNN();
+					break;
+				case OPCODE_FX1E:
+				case OPCODE_FX29:
+				case OPCODE_FX30:
+					i = I_UNKNOWN;
+					break;
+				case OPCODE_FX33:
+					if (record) {
+						recordStore(block, address, i, 3);
+					}
+					break;
+				case OPCODE_FX55:
+					if (record) {
+						recordStore(block, address, i, instruction.getX() + 1);
+					}
+					break;
+				default:
+					break;
+			}
+			address += 2;
+		}
+		return i;
+	}
+
+	/**
+	 * Records a store, flagging the blocks it writes over
+	 * 
+	 * @param block
+	 *            The block doing the store
+	 * @param address
+	 *            The address of the store
+	 * @param i
+	 *            The value of I at the store
+	 * @param length
+	 *            The amount of bytes stored
+	 */
+	private void recordStore(BasicBlock block, int address, int i, int length) {
+		if (i < 0) {
+			block.setUnknownStore();
+			return;
+		}
+		boolean hitsCode = false;
+		for (int j = i; j < i + length; j++) {
+			int written = j & (MEMORY_SIZE - 1);
+			for (BasicBlock target : getBlocksCovering(written)) {
+				target.setModified();
+				hitsCode = true;
+			}
+		}
+		if (hitsCode) {
+			codeWrites.add(new CodeWrite(address, i, i + length));
+		}
+	}
+
+	/**
+	 * Gets the blocks holding an instruction that uses a byte of memory
+	 * 
+	 * @param address
+	 *            The address of the byte
+	 * @return The blocks covering the byte
+	 */
+	private List<BasicBlock> getBlocksCovering(int address) {
+		List<BasicBlock> covering = new ArrayList<>(1);
+		// Blocks can overlap when code jumps into the middle of an
+		// instruction, so every block that could reach the byte is checked
+		for (Map.Entry<Integer, BasicBlock> entry : blocks.headMap(address, true).descendingMap().entrySet()) {
+			if (entry.getValue().covers(address)) {
+				covering.add(entry.getValue());
+			} else if (entry.getKey() + longest <= address) {
+				break;
+			}
+		}
+		return covering;
+	}
+
+	/**
+	 * Gets the block starting at an address
+	 * 
+	 * @param address
+	 *            The start address
+	 * @return The block, or null if no block starts there
+	 */
+	public BasicBlock getBlock(int address) {
+		return blocks.get(address);
+	}
+
+	/**
+	 * Gets the block holding the instruction at an address
+	 * 
+	 * @param address
+	 *            The address of the instruction
+	 * @return The block, or null if the address is not code
+	 */
+	public BasicBlock getBlockAt(int address) {
+		Map.Entry<Integer, BasicBlock> entry = blocks.floorEntry(address);
+		if (entry == null || !entry.getValue().covers(address)) {
+			return null;
+		}
+		return entry.getValue();
+	}
+
+	/**
+	 * Gets the block the rom starts in
+	 * 
+	 * @return The entry block, or null if the rom is empty
+	 */
+	public BasicBlock getEntry() {
+		return blocks.get(ENTRY);
+	}
+
+	/**
+	 * Gets every block
+	 * 
+	 * @return The blocks in address order
+	 */
+	public Collection<BasicBlock> getBlocks() {
+		return blocks.values();
+	}
+
+	/**
+	 * Gets whether an instruction starts at an address
+	 * 
+	 * @param address
+	 *            The address
+	 * @return Whether the address is reachable code
+	 */
+	public boolean isCode(int address) {
+		return address >= 0 && address < MEMORY_SIZE && starts[address];
+	}
+
+	/**
+	 * Gets the blocks that end in a BNNN jump
+	 * 
+	 * @return The blocks whose successors are unknown
+	 */
+	public List<BasicBlock> getIndirectJumps() {
+		List<BasicBlock> found = new ArrayList<>();
+		for (BasicBlock block : blocks.values()) {
+			if (block.isIndirectJump()) {
+				found.add(block);
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Gets the stores that are known to write over code
+	 * 
+	 * @return The writes in address order of the blocks doing them
+	 */
+	public List<CodeWrite> getCodeWrites() {
+		return codeWrites;
+	}
+
+	/**
+	 * Gets whether the rom might write over its own code, either through a
+	 * store known to hit code or a store to an address that is not known
+	 * 
+	 * @return Whether the rom may modify its own code
+	 */
+	public boolean isSelfModifying() {
+		if (!codeWrites.isEmpty()) {
+			return true;
+		}
+		for (BasicBlock block : blocks.values()) {
+			if (block.hasUnknownStore()) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
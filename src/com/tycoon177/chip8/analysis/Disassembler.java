@@ -0,0 +1,221 @@
+package com.tycoon177.chip8.analysis;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+
+import com.tycoon177.chip8.system.Instruction;
+import com.tycoon177.chip8.system.Rom;
+
+/**
+ * Turns decoded instructions back into readable assembly, and prints whole
+ * roms block by block from their control flow graph.
+ * 
+ * @author Benjamin McHone
+ *
+ */
+public class Disassembler {
+
+	private Disassembler() {
+	}
+
+	/**
+	 * Gets the assembly for an instruction
+	 * 
+	 * @param instruction
+	 *            The decoded instruction
+	 * @return The mnemonic and its operands, such as LD V1, 0x0c
+	 */
+	public static String format(Instruction instruction) {
+		int x = instruction.getX();
+		int y = instruction.getY();
+		String nn = String.format("0x%02x", instruction.getNN());
+		String nnn = String.format("0x%03x", instruction.getNNN());
+		switch (instruction.getType()) {
+			case OPCODE_00CN:
+				return "SCD " + instruction.getN();
+			case OPCODE_00E0:
+				return "CLS";
+			case OPCODE_00EE:
+				return "RET";
+			case OPCODE_00FB:
+				return "SCR";
+			case OPCODE_00FC:
+				return "SCL";
+			case OPCODE_00FE:
+				return "LOW";
+			case OPCODE_00FF:
+				return "HIGH";
+			case OPCODE_1NNN:
+				return "JP " + nnn;
+			case OPCODE_2NNN:
+				return "CALL " + nnn;
+			case OPCODE_3XNN:
+				return "SE V" + hex(x) + ", " + nn;
+			case OPCODE_4XNN:
+				return "SNE V" + hex(x) + ", " + nn;
+			case OPCODE_5XY0:
+				return "SE V" + hex(x) + ", V" + hex(y);
+			case OPCODE_6XNN:
+				return "LD V" + hex(x) + ", " + nn;
+			case OPCODE_7XNN:
+				return "ADD V" + hex(x) + ", " + nn;
+			case OPCODE_8XY0:
+				return "LD V" + hex(x) + ", V" + hex(y);
+			case OPCODE_8XY1:
+				return "OR V" + hex(x) + ", V" + hex(y);
+			case OPCODE_8XY2:
+				return "AND V" + hex(x) + ", V" + hex(y);
+			case OPCODE_8XY3:
+				return "XOR V" + hex(x) + ", V" + hex(y);
+			case OPCODE_8XY4:
+				return "ADD V" + hex(x) + ", V" + hex(y);
+			case OPCODE_8XY5:
+				return "SUB V" + hex(x) + ", V" + hex(y);
+			case OPCODE_8XY6:
+				return "SHR V" + hex(x);
+			case OPCODE_8XY7:
+				return "SUBN V" + hex(x) + ", V" + hex(y);
+			case OPCODE_8XYE:
+				return "SHL V" + hex(x);
+			case OPCODE_9XY0:
+				return "SNE V" + hex(x) + ", V" + hex(y);
+			case OPCODE_ANNN:
+				return "LD I, " + nnn;
+			case OPCODE_BNNN:
+				return "JP V0, " + nnn;
+			case OPCODE_CXNN:
+				return "RND V" + hex(x) + ", " + nn;
+			case OPCODE_DXYN:
+			case OPCODE_DXY0:
+				return "DRW V" + hex(x) + ", V" + hex(y) + ", " + instruction.getN();
+			case OPCODE_EX9E:
+				return "SKP V" + hex(x);
+			case OPCODE_EXA1:
+				return "SKNP V" + hex(x);
+			case OPCODE_FX07:
+				return "LD V" + hex(x) + ", DT";
+			case OPCODE_FX0A:
+				return "LD V" + hex(x) + ", K";
+			case OPCODE_FX15:
+				return "LD DT, V" + hex(x);
+			case OPCODE_FX18:
+				return "LD ST, V" + hex(x);
+			case OPCODE_FX1E:
+				return "ADD I, V" + hex(x);
+			case OPCODE_FX29:
+				return "LD F, V" + hex(x);
+			case OPCODE_FX30:
+				return "LD HF, V" + hex(x);
+			case OPCODE_FX33:
+				return "LD B, V" + hex(x);
+			case OPCODE_FX55:
+				return "LD [I], V" + hex(x);
+			case OPCODE_FX65:
+				return "LD V" + hex(x) + ", [I]";
+			default:
+				return String.format("DW 0x%04x", instruction.getOpcode());
+		}
+	}
+
+	/**
+	 * Gets a register index as a single hex digit
+	 * 
+	 * @param register
+	 *            The register index
+	 * @return The digit
+	 */
+	private static String hex(int register) {
+		return Integer.toHexString(register);
+	}
+
+	/**
+	 * Prints a rom block by block with the edges between blocks, the blocks
+	 * that are flagged, and the bytes that are never run as data
+	 * 
+	 * @param rom
+	 *            The rom
+	 * @param graph
+	 *            The control flow graph of the rom
+	 * @param out
+	 *            The stream to print to
+	 */
+	public static void print(Rom rom, ControlFlowGraph graph, PrintStream out) {
+		ByteBuffer data = rom.getData();
+		int end = ControlFlowGraph.ENTRY + rom.getLength();
+		int address = ControlFlowGraph.ENTRY;
+		for (BasicBlock block : graph.getBlocks()) {
+			if (block.getStart() > address) {
+				printData(data, address, block.getStart(), out);
+			}
+			out.print(block);
+			if (block.isIndirectJump()) {
+				out.print("  [indirect jump]");
+			}
+			if (block.isModified()) {
+				out.print("  [written over]");
+			}
+			if (block.hasUnknownStore()) {
+				out.print("  [stores through unknown I]");
+			}
+			out.println();
+			int at = block.getStart();
+			for (Instruction instruction : block.getInstructions()) {
+				out.printf("  0x%03x  %04x  %s%n", at, instruction.getOpcode(), format(instruction));
+				at += 2;
+			}
+			for (Edge edge : block.getSuccessors()) {
+				out.println("    -> " + edge);
+			}
+			address = Math.max(address, block.getEnd());
+		}
+		if (address < end) {
+			printData(data, address, end, out);
+		}
+		for (CodeWrite write : graph.getCodeWrites()) {
+			out.println("self modifying: " + write);
+		}
+	}
+
+	/**
+	 * Prints bytes that are never run, eight to a line
+	 * 
+	 * @param data
+	 *            The rom data
+	 * @param start
+	 *            The first address to print
+	 * @param end
+	 *            The address just past the last one to print
+	 * @param out
+	 *            The stream to print to
+	 */
+	private static void printData(ByteBuffer data, int start, int end, PrintStream out) {
+		for (int line = start; line < end; line += 8) {
+			out.printf("  0x%03x  DB", line);
+			for (int address = line; address < Math.min(line + 8, end); address++) {
+				out.printf(" %02x", data.get(address - ControlFlowGraph.ENTRY) & 0xff);
+			}
+			out.println();
+		}
+	}
+
+	/**
+	 * Disassembles rom files from the command line
+	 * 
+	 * @param args
+	 *            The rom files
+	 * @throws IOException
+	 *             Thrown when a rom cannot be read
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.err.println("Usage: --disassemble <rom>...");
+			return;
+		}
+		for (String file : args) {
+			Rom rom = new Rom(file);
+			System.out.println("; " + file);
+			print(rom, new ControlFlowGraph(rom), System.out);
+		}
+	}
+}
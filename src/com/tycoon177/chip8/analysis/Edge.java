@@ -0,0 +1,113 @@
+package com.tycoon177.chip8.analysis;
+
+/**
+ * A way that control can pass from the end of one basic block to the start of
+ * another
+ * 
+ * @author Benjamin McHone
+ *
+ */
+public class Edge {
+	/**
+	 * The reasons that control can move between blocks
+	 * 
+	 * @author Benjamin McHone
+	 *
+	 */
+	public enum Kind {
+		/**
+		 * Running on into the next instruction, including returning from a
+		 * call and a skip that is not taken
+		 */
+		FALLTHROUGH,
+		/**
+		 * A 1NNN jump
+		 */
+		JUMP,
+		/**
+		 * A 2NNN call into a subroutine
+		 */
+		CALL,
+		/**
+		 * A skip that is taken, passing over the next instruction
+		 */
+		SKIP
+	}
+
+	private Kind kind;
+	private int target;
+	private BasicBlock block;
+	private boolean back;
+
+	/**
+	 * Creates an edge
+	 * 
+	 * @param kind
+	 *            Why control moves
+	 * @param target
+	 *            The address control moves to
+	 */
+	Edge(Kind kind, int target) {
+		this.kind = kind;
+		this.target = target;
+	}
+
+	/**
+	 * Gets why control moves along the edge
+	 * 
+	 * @return The kind of edge
+	 */
+	public Kind getKind() {
+		return kind;
+	}
+
+	/**
+	 * Gets the address that control moves to
+	 * 
+	 * @return The target address
+	 */
+	public int getTarget() {
+		return target;
+	}
+
+	/**
+	 * Gets the block that control moves to
+	 * 
+	 * @return The block, or null when the target is outside of the rom
+	 */
+	public BasicBlock getBlock() {
+		return block;
+	}
+
+	/**
+	 * Sets the block that control moves to
+	 * 
+	 * @param block
+	 *            The target block
+	 */
+	void setBlock(BasicBlock block) {
+		this.block = block;
+	}
+
+	/**
+	 * Gets whether the edge goes back to a block that is still being followed
+	 * from the entry, which makes it the edge that closes a loop
+	 * 
+	 * @return Whether the edge closes a loop
+	 */
+	public boolean isBackEdge() {
+		return back;
+	}
+
+	/**
+	 * Marks the edge as closing a loop
+	 */
+	void setBackEdge() {
+		back = true;
+	}
+
+	@Override
+	public String toString() {
+		return kind.name().toLowerCase() + " 0x" + Integer.toHexString(target) + (back ? " (loop)" : "");
+	}
+}
@@ -0,0 +1,616 @@
+package com.tycoon177.chip8.aot;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import com.tycoon177.chip8.analysis.BasicBlock;
+import com.tycoon177.chip8.analysis.ControlFlowGraph;
+import com.tycoon177.chip8.analysis.Disassembler;
+import com.tycoon177.chip8.library.UserCache;
+import com.tycoon177.chip8.system.Block;
+import com.tycoon177.chip8.system.CompiledCode;
+import com.tycoon177.chip8.system.Fusion;
+import com.tycoon177.chip8.system.Instruction;
+import com.tycoon177.chip8.system.Rom;
+
+/**
+ * Compiles the reachable code of a rom into a Java class ahead of time. Every
+ * basic block found by the {@link ControlFlowGraph} becomes a method, picked by
+ * a dense switch on the block number, and blocks are chained together by a
+ * loop around that switch. Register and I arithmetic, memory reads, jumps and
+ * skips are written out in Java, matching the interpreter, and everything
+ * else calls back into the interpreter's own opcodes with the operands
+ * already decoded. Key waits and delay timer waits are left to the
+ * interpreter, which skips to the end of the frame in them.
+ * <p>
+ * The class is saved in the {@link UserCache} under the hash of the rom and
+ * loaded from there on later runs, so a rom is only compiled once. Classes
+ * are never loaded from next to the rom, as anything dropped into a rom
+ * directory would then be run. A class file has to hold the hash of the rom
+ * and be named after it before it is loaded, and one compiled for another
+ * {@link CompiledCode#VERSION} is compiled again. Compiling needs the
+ * compiler of a JDK.
+ * 
+ * @author Benjamin McHone
+ *
+ */
+public class AotCompiler {
+	private static final String PACKAGE = "com.tycoon177.chip8.aot";
+	/**
+	 * The directory of the cache that compiled classes are kept in
+	 */
+	public static final String CACHE_DIRECTORY = "aot";
+	// Classes already loaded, by rom hash
+	private static final ConcurrentHashMap<String, Class<? extends CompiledCode>> loaded = new ConcurrentHashMap<>();
+
+	private AotCompiler() {
+	}
+
+	/**
+	 * Gets the file the compiled class of a rom is saved to
+	 * 
+	 * @param rom
+	 *            The rom
+	 * @return The class file in the cache
+	 * @throws IOException
+	 *             Thrown when the cache cannot be made
+	 */
+	public static File getClassFile(Rom rom) throws IOException {
+		return new File(UserCache.getDirectory(CACHE_DIRECTORY),
+				rom.getHash() + "-" + CompiledCode.VERSION + ".class");
+	}
+
+	/**
+	 * Gets the name of the class a rom compiles to
+	 * 
+	 * @param rom
+	 *            The rom
+	 * @return The fully qualified class name
+	 */
+	public static String getClassName(Rom rom) {
+		return PACKAGE + ".Rom_" + rom.getHash().substring(0, 16);
+	}
+
+	/**
+	 * Gets the compiled code of a rom file, loading it from the cache or
+	 * compiling and saving it first. Every call returns new code, as compiled
+	 * code can only be used by one computer.
+	 * 
+	 * @param romFile
+	 *            The rom file
+	 * @return The compiled code, or null when there is no Java compiler to
+	 *         compile it with
+	 * @throws IOException
+	 *             Thrown when the rom cannot be read or compiled
+	 */
+	public static CompiledCode load(File romFile) throws IOException {
+		Rom rom = new Rom(romFile.getPath());
+		File classFile = getClassFile(rom);
+		Class<? extends CompiledCode> type;
+		try {
+			type = loaded.computeIfAbsent(rom.getHash(), hash -> {
+				try {
+					return loadOrCompile(rom, classFile);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		return type == null ? null : newInstance(type);
+	}
+
+	/**
+	 * Loads the class of a rom from its class file, or compiles it and saves
+	 * it when the file is missing or not a class compiled from the rom
+	 * 
+	 * @param rom
+	 *            The rom
+	 * @param classFile
+	 *            The class file
+	 * @return The class, or null when there is no Java compiler
+	 * @throws IOException
+	 *             Thrown when the rom cannot be compiled
+	 */
+	private static Class<? extends CompiledCode> loadOrCompile(Rom rom, File classFile) throws IOException {
+		String name = getClassName(rom);
+		if (classFile.exists()) {
+			byte[] bytes = Files.readAllBytes(classFile.toPath());
+			Class<? extends CompiledCode> type = holdsHash(bytes, rom.getHash()) ? define(name, bytes) : null;
+			if (type != null && isUsable(type, rom)) {
+				return type;
+			}
+		}
+		if (ToolProvider.getSystemJavaCompiler() == null) {
+			return null;
+		}
+		byte[] bytes = compile(name, generate(name, rom, new ControlFlowGraph(rom)));
+		try {
+			File temp = File.createTempFile(rom.getHash(), ".tmp", classFile.getParentFile());
+			Files.write(temp.toPath(), bytes);
+			Files.move(temp.toPath(), classFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			// Still usable for this run, it is just compiled again next time
+			e.printStackTrace();
+		}
+		Class<? extends CompiledCode> type = define(name, bytes);
+		if (type == null) {
+			throw new IOException("Compiled class for " + name + " could not be loaded");
+		}
+		return type;
+	}
+
+	/**
+	 * Checks if a class file holds the hash of a rom, without loading it.
+	 * Generated classes pass the hash to {@link CompiledCode} as a string
+	 * constant, which is kept in the class file as plain text.
+	 * 
+	 * @param bytes
+	 *            The class file
+	 * @param hash
+	 *            The hash of the rom
+	 * @return Whether the hash is in the class file
+	 */
+	private static boolean holdsHash(byte[] bytes, String hash) {
+		byte[] text = hash.getBytes(StandardCharsets.US_ASCII);
+		search: for (int j = 0; j + text.length <= bytes.length; j++) {
+			for (int k = 0; k < text.length; k++) {
+				if (bytes[j + k] != text[k]) {
+					continue search;
+				}
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Defines a compiled class in a class loader of its own. Nothing in the
+	 * class is run until an instance is made.
+	 * 
+	 * @param name
+	 *            The name of the class
+	 * @param bytes
+	 *            The class file
+	 * @return The class, or null when the bytes are not a class of that name
+	 *         that extends {@link CompiledCode}
+	 */
+	private static Class<? extends CompiledCode> define(String name, byte[] bytes) {
+		try {
+			return new RomClassLoader().define(name, bytes).asSubclass(CompiledCode.class);
+		} catch (LinkageError | ClassCastException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Checks if a class loaded from the cache was compiled from a rom for
+	 * this {@link CompiledCode#VERSION}
+	 * 
+	 * @param type
+	 *            The class
+	 * @param rom
+	 *            The rom
+	 * @return Whether the class can be used
+	 */
+	private static boolean isUsable(Class<? extends CompiledCode> type, Rom rom) {
+		try {
+			return rom.getHash().equals(newInstance(type).getHash());
+		} catch (IllegalStateException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Creates compiled code from its class
+	 * 
+	 * @param type
+	 *            The class
+	 * @return The compiled code
+	 * @throws IllegalStateException
+	 *             Thrown when the class was compiled for another version
+	 */
+	private static CompiledCode newInstance(Class<? extends CompiledCode> type) {
+		try {
+			return type.getConstructor().newInstance();
+		} catch (InvocationTargetException e) {
+			throw new IllegalStateException(e.getCause());
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Writes the Java source of the class a rom compiles to
+	 * 
+	 * @param name
+	 *            The fully qualified name of the class
+	 * @param rom
+	 *            The rom
+	 * @param graph
+	 *            The control flow graph of the rom
+	 * @return The source
+	 */
+	public static String generate(String name, Rom rom, ControlFlowGraph graph) {
+		List<BasicBlock> blocks = new ArrayList<>();
+		for (BasicBlock block : graph.getBlocks()) {
+			// Blocks that are only a key wait or a delay timer wait are left to
+			// the interpreter
+			if (getCompiledLength(block) > 0 && !isDelayWait(block, graph)) {
+				blocks.add(block);
+			}
+		}
+		String simpleName = name.substring(name.lastIndexOf('.') + 1);
+		StringBuilder out = new StringBuilder();
+		out.append("package ").append(name.substring(0, name.lastIndexOf('.'))).append(";\n\n");
+		out.append("import ").append(CompiledCode.class.getName()).append(";\n");
+		out.append("import ").append(Instruction.class.getName()).append(";\n\n");
+		out.append("/**\n * Generated from rom ").append(rom.getHash()).append("\n */\n");
+		out.append("public final class ").append(simpleName).append(" extends CompiledCode {\n");
+		StringBuilder methods = new StringBuilder();
+		StringBuilder starts = new StringBuilder();
+		StringBuilder lengths = new StringBuilder();
+		for (int b = 0; b < blocks.size(); b++) {
+			BasicBlock block = blocks.get(b);
+			starts.append(b == 0 ? "" : ", ").append(String.format("0x%03x", block.getStart()));
+			lengths.append(b == 0 ? "" : ", ").append(block.getInstructions().length);
+			writeBlock(b, block, out, methods);
+		}
+		out.append("\n\tpublic ").append(simpleName).append("() {\n");
+		out.append("\t\tsuper(").append(CompiledCode.VERSION).append(", \"").append(rom.getHash()).append("\", \"");
+		ByteBuffer data = rom.getData();
+		for (int j = 0; j < rom.getLength(); j++) {
+			out.append(String.format("\\%03o", data.get(j) & 0xff));
+		}
+		out.append("\",\n\t\t\t\tnew int[] { ").append(starts).append(" },\n\t\t\t\tnew int[] { ").append(lengths)
+				.append(" });\n\t}\n\n");
+		out.append("\t@Override\n\tprotected int execute(int address) {\n\t\tint[] blockAt = this.blockAt;\n");
+		out.append("\t\twhile (address < ADDRESSES) {\n\t\t\tswitch (blockAt[address]) {\n");
+		for (int b = 0; b < blocks.size(); b++) {
+			out.append("\t\t\t\tcase ").append(b).append(":\n\t\t\t\t\taddress = block").append(b)
+					.append("();\n\t\t\t\t\tbreak;\n");
+		}
+		out.append("\t\t\t\tdefault:\n\t\t\t\t\treturn address;\n\t\t\t}\n\t\t}\n\t\treturn address;\n\t}\n");
+		out.append(methods);
+		out.append("}\n");
+		return out.toString();
+	}
+
+	/**
+	 * Checks if a block waits for the delay timer to run out. The block tier
+	 * skips the rest of the frame at once in such a loop, which is faster
+	 * than running it compiled, so these blocks are not compiled.
+	 * 
+	 * @param block
+	 *            The block
+	 * @param graph
+	 *            The control flow graph the block is in
+	 * @return Whether the block is a {@link Fusion#DELAY_WAIT}
+	 */
+	private static boolean isDelayWait(BasicBlock block, ControlFlowGraph graph) {
+		BasicBlock after = graph.getBlock(block.getEnd());
+		Instruction next = after != null ? after.getInstructions()[0] : null;
+		return Fusion.find(block.getInstructions(), 0, block.getStart(), next) == Fusion.DELAY_WAIT;
+	}
+
+	/**
+	 * Gets how many instructions of a block are compiled. Key waits use up
+	 * the rest of the frame on the interpreter, and unknown opcodes are
+	 * reported by it, so a block ending in either stops just before it.
+	 * 
+	 * @param block
+	 *            The block
+	 * @return The amount of instructions the compiled block runs
+	 */
+	private static int getCompiledLength(BasicBlock block) {
+		int length = block.getInstructions().length;
+		switch (block.getLast().getType()) {
+			case OPCODE_FX0A:
+			case UNKNOWN:
+				return length - 1;
+			default:
+				return length;
+		}
+	}
+
+	/**
+	 * Writes the method for a block, and the constants for the instructions
+	 * it hands to the interpreter. The method returns the address to go on
+	 * from, plus STOP when the compiled code has to stop there.
+	 * 
+	 * @param number
+	 *            The number of the block
+	 * @param block
+	 *            The block
+	 * @param constants
+	 *            Where the constants are written
+	 * @param methods
+	 *            Where the method is written
+	 */
+	private static void writeBlock(int number, BasicBlock block, StringBuilder constants, StringBuilder methods) {
+		Instruction[] instructions = block.getInstructions();
+		int length = getCompiledLength(block);
+		methods.append("\n\t// ").append(block).append("\n");
+		methods.append("\tprivate int block").append(number).append("() {\n");
+		methods.append(String.format("\t\tif (left < %d || !isLive(%d)) {%n\t\t\treturn STOP | 0x%03x;%n\t\t}%n", length,
+				number, block.getStart()));
+		methods.append("\t\tint[] v = this.v;\n");
+		for (int j = 0; j < length; j++) {
+			Instruction instruction = instructions[j];
+			int address = block.getStart() + j * 2;
+			if (Block.endsBlock(instruction.getType())) {
+				methods.append("\t\tleft -= ").append(length).append(";\n");
+				methods.append("\t\t").append(translateBranch(instruction, address, constants)).append(" // ")
+						.append(Disassembler.format(instruction)).append("\n\t}\n");
+				return;
+			}
+			String code = translate(instruction);
+			if (code == null) {
+				code = String.format("exec(0x%03x, %s);", address, constant(instruction, address, constants));
+			}
+			methods.append("\t\t").append(code).append(" // ").append(Disassembler.format(instruction)).append("\n");
+			switch (instruction.getType()) {
+				case OPCODE_FX33:
+				case OPCODE_FX55:
+					methods.append(String.format("\t\tif (!isLive(%d)) {%n\t\t\tleft -= %d;%n\t\t\treturn STOP | 0x%03x;%n\t\t}%n",
+							number, j + 1, address + 2));
+					break;
+				default:
+					break;
+			}
+		}
+		int end = block.getStart() + length * 2;
+		methods.append("\t\tleft -= ").append(length).append(";\n");
+		if (length < instructions.length) {
+			methods.append(String.format("\t\treturn STOP | 0x%03x; // %s%n\t}%n", end,
+					Disassembler.format(block.getLast())));
+		} else {
+			methods.append(String.format("\t\treturn 0x%03x;%n\t}%n", end));
+		}
+	}
+
+	/**
+	 * Writes the constant holding an instruction that is handed to the
+	 * interpreter
+	 * 
+	 * @param instruction
+	 *            The instruction
+	 * @param address
+	 *            The address of the instruction
+	 * @param constants
+	 *            Where the constant is written
+	 * @return The name of the constant
+	 */
+	private static String constant(Instruction instruction, int address, StringBuilder constants) {
+		String name = String.format("AT_%03x", address);
+		constants.append(String.format("\tprivate static final Instruction %s = new Instruction(0x%04x);%n", name,
+				instruction.getOpcode()));
+		return name;
+	}
+
+	/**
+	 * Writes the instruction that ends a block as a return of the address to
+	 * go on from. Jumps and skips only look at registers and keys, so they
+	 * are written out in Java, and everything else runs on the interpreter.
+	 * 
+	 * @param instruction
+	 *            The instruction
+	 * @param address
+	 *            The address of the instruction
+	 * @param constants
+	 *            Where constants are written
+	 * @return The Java statement
+	 */
+	private static String translateBranch(Instruction instruction, int address, StringBuilder constants) {
+		String vx = "v[" + instruction.getX() + "]";
+		String vy = "v[" + instruction.getY() + "]";
+		String skip = String.format(" ? 0x%03x : 0x%03x;", address + 4, address + 2);
+		switch (instruction.getType()) {
+			case OPCODE_1NNN:
+				return String.format("return 0x%03x;", instruction.getNNN());
+			case OPCODE_3XNN:
+				return "return " + vx + " == " + instruction.getNN() + skip;
+			case OPCODE_4XNN:
+				return "return " + vx + " != " + instruction.getNN() + skip;
+			case OPCODE_5XY0:
+				return "return " + vx + " == " + vy + skip;
+			case OPCODE_9XY0:
+				return "return " + vx + " != " + vy + skip;
+			case OPCODE_EX9E:
+				return "return isKeyPressed(" + vx + ")" + skip;
+			case OPCODE_EXA1:
+				return "return !isKeyPressed(" + vx + ")" + skip;
+			default:
+				return String.format("return branch(0x%03x, %s);", address, constant(instruction, address, constants));
+		}
+	}
+
+	/**
+	 * Writes an instruction as Java when it only works on registers, I and
+	 * reading memory. These have to do exactly what the opcodes of the
+	 * computer do.
+	 * 
+	 * @param instruction
+	 *            The instruction
+	 * @return The Java statements, or null when the interpreter has to run it
+	 */
+	private static String translate(Instruction instruction) {
+		String vx = "v[" + instruction.getX() + "]";
+		String vy = "v[" + instruction.getY() + "]";
+		switch (instruction.getType()) {
+			case OPCODE_6XNN:
+				return vx + " = " + instruction.getNN() + ";";
+			case OPCODE_7XNN:
+				return vx + " = (" + vx + " + " + instruction.getNN() + ") & 0xff;";
+			case OPCODE_8XY0:
+				return vx + " = " + vy + ";";
+			case OPCODE_8XY1:
+				return vx + " |= " + vy + ";";
+			case OPCODE_8XY2:
+				return vx + " &= " + vy + ";";
+			case OPCODE_8XY3:
+				return vx + " ^= " + vy + ";";
+			case OPCODE_8XY4:
+				return "{ int sum = " + vx + " + " + vy + "; " + vx + " = sum & 0xff; v[15] = sum > 0xff ? 1 : 0; }";
+			case OPCODE_8XY5:
+				return "v[15] = " + vx + " > " + vy + " ? 1 : 0; " + vx + " = (" + vx + " - " + vy + ") & 0xff;";
+			case OPCODE_8XY6:
+				return "v[15] = " + vx + " & 1;";
+			case OPCODE_8XY7:
+				return vx + " = (" + vy + " - " + vx + ") & 0xff; v[15] = " + vy + " > " + vx + " ? 1 : 0;";
+			case OPCODE_8XYE:
+				return "{ int value = " + vx + "; v[15] = (value & 0xf0) >> 4; " + vx + " = (value << 1) & 0xff; }";
+			case OPCODE_ANNN:
+				return String.format("setI(0x%03x);", instruction.getNNN());
+			case OPCODE_FX1E:
+				return "setI((getI() + " + vx + ") & 0xffff);";
+			case OPCODE_FX29:
+				return "setI((" + vx + " & 0xf) * 5);";
+			case OPCODE_FX30:
+				return "setI((" + vx + " & 0xf) * 10 + 0x50);";
+			case OPCODE_FX65:
+				StringBuilder load = new StringBuilder("{ int i = getI();");
+				for (int j = 0; j <= instruction.getX(); j++) {
+					load.append(" v[").append(j).append("] = read(i").append(j == 0 ? "" : " + " + j).append(");");
+				}
+				return load.append(" }").toString();
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * Compiles Java source in memory
+	 * 
+	 * @param name
+	 *            The fully qualified name of the class
+	 * @param source
+	 *            The source
+	 * @return The class file
+	 * @throws IOException
+	 *             Thrown when there is no compiler or the source does not
+	 *             compile
+	 */
+	public static byte[] compile(String name, String source) throws IOException {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		if (compiler == null) {
+			throw new IOException("No Java compiler, roms can only be compiled on a JDK");
+		}
+		Map<String, ByteArrayOutputStream> classes = new HashMap<>();
+		JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///" + name.replace('.', '/') + ".java"),
+				JavaFileObject.Kind.SOURCE) {
+			@Override
+			public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+				return source;
+			}
+		};
+		JavaFileManager manager = new ForwardingJavaFileManager<JavaFileManager>(
+				compiler.getStandardFileManager(null, null, null)) {
+			@Override
+			public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind,
+					FileObject sibling) {
+				return new SimpleJavaFileObject(URI.create("string:///" + className.replace('.', '/') + ".class"),
+						kind) {
+					@Override
+					public OutputStream openOutputStream() {
+						ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+						classes.put(className, bytes);
+						return bytes;
+					}
+				};
+			}
+		};
+		StringWriter errors = new StringWriter();
+		List<String> options = Arrays.asList("-classpath", System.getProperty("java.class.path"), "-nowarn");
+		boolean compiled = compiler.getTask(errors, manager, null, options, null, Collections.singletonList(file))
+				.call();
+		manager.close();
+		if (!compiled || !classes.containsKey(name)) {
+			throw new IOException("Could not compile " + name + ":\n" + errors);
+		}
+		return classes.get(name).toByteArray();
+	}
+
+	/**
+	 * Compiles rom files from the command line, saving each class in the
+	 * cache
+	 * 
+	 * @param args
+	 *            The rom files
+	 * @throws IOException
+	 *             Thrown when a rom cannot be read or compiled
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.err.println("Usage: --compile <rom>...");
+			return;
+		}
+		for (String path : args) {
+			File romFile = new File(path);
+			long start = System.nanoTime();
+			CompiledCode code = load(romFile);
+			if (code == null) {
+				System.err.println("No Java compiler, roms can only be compiled on a JDK");
+				return;
+			}
+			System.out.printf("%-20s %d blocks in %s (%.1f ms)%n", romFile.getName(), code.getBlockCount(),
+					getClassFile(new Rom(path)).getName(), (System.nanoTime() - start) / 1e6);
+		}
+	}
+
+	/**
+	 * Loads each compiled class on its own, so that an old class of the same
+	 * name never gets in the way
+	 * 
+	 * @author Benjamin McHone
+	 *
+	 */
+	private static class RomClassLoader extends ClassLoader {
+		/**
+		 * Creates a class loader that finds everything else where the
+		 * emulator was loaded from
+		 */
+		RomClassLoader() {
+			super(CompiledCode.class.getClassLoader());
+		}
+
+		/**
+		 * Defines a class
+		 * 
+		 * @param name
+		 *            The name of the class
+		 * @param bytes
+		 *            The class file
+		 * @return The class
+		 */
+		Class<?> define(String name, byte[] bytes) {
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+}
@@ -0,0 +1,356 @@
+package com.tycoon177.chip8.batch;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import com.tycoon177.chip8.aot.AotCompiler;
+import com.tycoon177.chip8.library.Platform;
+import com.tycoon177.chip8.library.RomCatalog;
+import com.tycoon177.chip8.system.BlockCache;
+import com.tycoon177.chip8.system.Computer;
+import com.tycoon177.chip8.system.Opcode;
+import com.tycoon177.chip8.system.Rom;
+
+/**
+ * Runs every rom in a directory headless for a set amount of cycles, each on
+ * its own computer, spread over all of the cores.
+ * 
+ * @author Benjamin McHone
+ *
+ */
+public class BatchRunner {
+	// Blocks run between checks for the batch timing out
+	private static final int INTERRUPT_CHECK_BLOCKS = 4096;
+	private File[] roms;
+	private long cycles;
+	private long timeoutSeconds;
+	private int threads;
+	private boolean compiled;
+
+	/**
+	 * Creates a batch runner
+	 * 
+	 * @param roms
+	 *            The rom files to run
+	 * @param cycles
+	 *            The amount of instructions to run each rom for
+	 * @param timeoutSeconds
+	 *            How long the whole batch may take before unfinished roms are
+	 *            given up on
+	 * @param threads
+	 *            The amount of worker threads to use
+	 */
+	public BatchRunner(File[] roms, long cycles, long timeoutSeconds, int threads) {
+		this.roms = roms;
+		this.cycles = cycles;
+		this.timeoutSeconds = timeoutSeconds;
+		this.threads = threads;
+	}
+
+	/**
+	 * Sets whether roms are run from the classes they compile to ahead of
+	 * time, compiling them first if needed
+	 * 
+	 * @param compiled
+	 *            Whether to run compiled code
+	 */
+	public void setCompiled(boolean compiled) {
+		this.compiled = compiled;
+	}
+
+	/**
+	 * Runs all of the roms and prints a line for each one. Roms still running
+	 * when the timeout is reached are interrupted and reported as timed out.
+	 * 
+	 * @return The results in the same order as the roms
+	 * @throws InterruptedException
+	 *             Thrown when interrupted while waiting for the roms
+	 */
+	public List<Result> run() throws InterruptedException {
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Callable<Result>> tasks = new ArrayList<>();
+		for (File rom : roms) {
+			tasks.add(() -> runRom(rom));
+		}
+		List<Result> results = new ArrayList<>();
+		try {
+			List<Future<Result>> futures = pool.invokeAll(tasks, timeoutSeconds, TimeUnit.SECONDS);
+			for (int i = 0; i < futures.size(); i++) {
+				Result result;
+				try {
+					result = futures.get(i).get();
+				} catch (CancellationException e) {
+					result = new Result(roms[i].getName(), "timed out");
+				} catch (ExecutionException e) {
+					result = new Result(roms[i].getName(), e.getCause().toString());
+				}
+				results.add(result);
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		return results;
+	}
+
+	/**
+	 * Runs a single rom on a new computer for exactly the cycle budget, so the
+	 * same rom ends on the same screen whichever tier runs it
+	 * 
+	 * @param file
+	 *            The rom file
+	 * @return The result of running the rom
+	 * @throws IOException
+	 *             Thrown when the rom cannot be read
+	 * @throws InterruptedException
+	 *             Thrown when the batch timed out while the rom was running
+	 */
+	private Result runRom(File file) throws IOException, InterruptedException {
+		Computer computer = new Computer();
+		computer.loadRom(new Rom(file.getPath()));
+		if (compiled) {
+			computer.setCompiledCode(AotCompiler.load(file));
+		}
+		computer.publishMetrics();
+		// Key waits and fused loops skip ahead to the end of a frame otherwise
+		computer.setCycleLimit(cycles);
+		long start = System.nanoTime();
+		try {
+			int blocks = 0;
+			while (cycles - computer.getCycleCount() > BlockCache.MAX_BLOCK_LENGTH) {
+				computer.executeBlock();
+				if (++blocks == INTERRUPT_CHECK_BLOCKS) {
+					blocks = 0;
+					if (Thread.interrupted()) {
+						throw new InterruptedException();
+					}
+				}
+			}
+			// Finish one instruction at a time to stop on exactly the same cycle
+			while (computer.getCycleCount() < cycles) {
+				computer.emulationCycle();
+			}
+		} finally {
+			computer.unpublishMetrics();
+		}
+		long nanos = System.nanoTime() - start;
+		int hash = Arrays.hashCode(computer.getDisplay().getScreen());
+		return new Result(file.getName(), hash, computer.getCycleCount(), nanos);
+	}
+
+	/**
+	 * Runs the roms interpreted and then compiled, and prints whether each rom
+	 * ended on the same screen after the same amount of instructions
+	 * 
+	 * @return The amount of roms that did not match
+	 * @throws InterruptedException
+	 *             Thrown when interrupted while waiting for the roms
+	 */
+	public int check() throws InterruptedException {
+		boolean wasCompiled = compiled;
+		List<Result> interpreted;
+		List<Result> aot;
+		try {
+			compiled = false;
+			interpreted = run();
+			compiled = true;
+			aot = run();
+		} finally {
+			compiled = wasCompiled;
+		}
+		int mismatches = 0;
+		for (int i = 0; i < roms.length; i++) {
+			Result expected = interpreted.get(i);
+			Result actual = aot.get(i);
+			boolean same = expected.getError() == null && actual.getError() == null
+					&& expected.getScreenHash() == actual.getScreenHash()
+					&& expected.getInstructions() == actual.getInstructions();
+			if (same) {
+				System.out.println(expected);
+			} else {
+				mismatches++;
+				System.out.println("DIFFERENT");
+				System.out.println("  interpreted " + expected);
+				System.out.println("  compiled    " + actual);
+			}
+		}
+		return mismatches;
+	}
+
+	/**
+	 * Runs a directory of roms from the command line. The roms are listed
+	 * through the catalog of the directory, so they can be narrowed down by
+	 * platform or by an opcode they use without reading them again.
+	 * 
+	 * @param args
+	 *            The directory, the cycle budget per rom, optionally the
+	 *            timeout in seconds, and optionally --platform with chip8 or
+	 *            schip, --uses with an opcode family such as 00FF, --aot to
+	 *            run the roms compiled, and --check to run them both ways and
+	 *            compare the results
+	 * @throws InterruptedException
+	 *             Thrown when interrupted while waiting for the roms
+	 * @throws IOException
+	 *             Thrown when the directory cannot be listed
+	 */
+	public static void main(String[] args) throws InterruptedException, IOException {
+		List<String> positional = new ArrayList<>();
+		Predicate<RomCatalog.Entry> filter = entry -> true;
+		boolean compiled = false;
+		boolean check = false;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--aot")) {
+				compiled = true;
+			} else if (args[i].equals("--check")) {
+				check = true;
+			} else if (args[i].equals("--platform") && i + 1 < args.length) {
+				Platform platform = Platform.parse(args[++i]);
+				filter = filter.and(entry -> entry.getPlatform() == platform);
+			} else if (args[i].equals("--uses") && i + 1 < args.length) {
+				Opcode type = Opcode.valueOf("OPCODE_" + args[++i].toUpperCase());
+				filter = filter.and(entry -> entry.uses(type));
+			} else {
+				positional.add(args[i]);
+			}
+		}
+		if (positional.size() < 2) {
+			System.err.println("Usage: --batch <rom directory> <cycles per rom> [timeout seconds] "
+					+ "[--platform chip8|schip] [--uses <opcode>] [--aot] [--check]");
+			return;
+		}
+		File directory = new File(positional.get(0));
+		if (!directory.isDirectory()) {
+			System.err.println("Not a directory: " + directory);
+			return;
+		}
+		List<RomCatalog.Entry> entries = new RomCatalog(directory).find(filter);
+		File[] roms = new File[entries.size()];
+		for (int i = 0; i < roms.length; i++) {
+			roms[i] = entries.get(i).getFile();
+		}
+		long cycles = Long.parseLong(positional.get(1));
+		long timeout = positional.size() > 2 ? Long.parseLong(positional.get(2)) : 60;
+		BatchRunner runner = new BatchRunner(roms, cycles, timeout, Runtime.getRuntime().availableProcessors());
+		runner.setCompiled(compiled);
+		if (check) {
+			int mismatches = runner.check();
+			System.out.printf("%d of %d roms differ between the interpreter and compiled code%n", mismatches,
+					roms.length);
+			if (mismatches > 0) {
+				System.exit(1);
+			}
+			return;
+		}
+		long start = System.nanoTime();
+		List<Result> results = runner.run();
+		long nanos = System.nanoTime() - start;
+		long total = 0;
+		for (Result result : results) {
+			System.out.println(result);
+			total += result.getInstructions();
+		}
+		System.out.printf("%d roms, %d instructions in %.1f ms (%.2f MIPS)%n", results.size(), total, nanos / 1e6,
+				total * 1e3 / nanos);
+	}
+
+	/**
+	 * The outcome of running a single rom
+	 * 
+	 * @author Benjamin McHone
+	 *
+	 */
+	public static class Result {
+		private String name;
+		private int screenHash;
+		private long instructions;
+		private long nanos;
+		private String error;
+
+		/**
+		 * Creates the result of a rom that ran to the end of its budget
+		 * 
+		 * @param name
+		 *            The rom name
+		 * @param screenHash
+		 *            The hash of the final frame buffer
+		 * @param instructions
+		 *            The amount of instructions executed
+		 * @param nanos
+		 *            How long the instructions took
+		 */
+		public Result(String name, int screenHash, long instructions, long nanos) {
+			this.name = name;
+			this.screenHash = screenHash;
+			this.instructions = instructions;
+			this.nanos = nanos;
+		}
+
+		/**
+		 * Creates the result of a rom that did not finish
+		 * 
+		 * @param name
+		 *            The rom name
+		 * @param error
+		 *            Why it did not finish
+		 */
+		public Result(String name, String error) {
+			this.name = name;
+			this.error = error;
+		}
+
+		/**
+		 * Gets the hash of the final frame buffer
+		 * 
+		 * @return The hash
+		 */
+		public int getScreenHash() {
+			return screenHash;
+		}
+
+		/**
+		 * Gets the amount of instructions executed
+		 * 
+		 * @return The instruction count
+		 */
+		public long getInstructions() {
+			return instructions;
+		}
+
+		/**
+		 * Gets the instructions executed per second
+		 * 
+		 * @return The throughput
+		 */
+		public double getInstructionsPerSecond() {
+			return nanos == 0 ? 0 : instructions * 1e9 / nanos;
+		}
+
+		/**
+		 * Gets why the rom did not finish
+		 * 
+		 * @return The error, or null if it finished
+		 */
+		public String getError() {
+			return error;
+		}
+
+		@Override
+		public String toString() {
+			if (error != null) {
+				return String.format("%-20s %s", name, error);
+			}
+			return String.format("%-20s screen=%08x instructions=%d time=%.1fms ips=%.0f", name, screenHash,
+					instructions, nanos / 1e6, getInstructionsPerSecond());
+		}
+	}
+}
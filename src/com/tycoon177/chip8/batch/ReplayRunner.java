@@ -0,0 +1,79 @@
+package com.tycoon177.chip8.batch;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.tycoon177.chip8.batch.BatchRunner.Result;
+import com.tycoon177.chip8.system.BlockCache;
+import com.tycoon177.chip8.system.Computer;
+import com.tycoon177.chip8.system.InputReplay;
+
+/**
+ * Plays back recorded input headless, as fast as the host allows. The same
+ * recording always ends on the same screen, so it can be used to benchmark
+ * and check interactive roms.
+ * 
+ * @author Benjamin McHone
+ *
+ */
+public class ReplayRunner {
+
+	/**
+	 * Plays back a recording on a new computer
+	 * 
+	 * @param file
+	 *            The recording
+	 * @param extraCycles
+	 *            How many instructions to keep running after the last
+	 *            recorded cycle
+	 * @return The result of the run
+	 * @throws IOException
+	 *             Thrown when the recording cannot be read
+	 */
+	public static Result run(File file, long extraCycles) throws IOException {
+		InputReplay replay = new InputReplay(file);
+		Computer computer = new Computer();
+		computer.replay(replay);
+		long startCycle = computer.getCycleCount();
+		long endCycle = replay.getEndCycle() + extraCycles;
+		// Key waits and fused loops skip ahead to the end of a frame otherwise
+		computer.setCycleLimit(endCycle);
+		long start = System.nanoTime();
+		while (endCycle - computer.getCycleCount() > BlockCache.MAX_BLOCK_LENGTH) {
+			computer.executeBlock();
+		}
+		// Finish one instruction at a time to stop on exactly the same cycle
+		while (computer.getCycleCount() < endCycle) {
+			computer.emulationCycle();
+		}
+		long nanos = System.nanoTime() - start;
+		int hash = Arrays.hashCode(computer.getDisplay().getScreen());
+		return new Result(file.getName(), hash, computer.getCycleCount() - startCycle, nanos);
+	}
+
+	/**
+	 * Plays back recordings from the command line
+	 * 
+	 * @param args
+	 *            The recordings, optionally followed by the instructions to
+	 *            keep running after each one ends
+	 * @throws IOException
+	 *             Thrown when a recording cannot be read
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: --replay <recording>... [extra cycles]");
+			return;
+		}
+		int files = args.length;
+		long extraCycles = 0;
+		if (args.length > 1 && args[args.length - 1].matches("\\d+")) {
+			extraCycles = Long.parseLong(args[args.length - 1]);
+			files--;
+		}
+		for (int i = 0; i < files; i++) {
+			System.out.println(run(new File(args[i]), extraCycles));
+		}
+	}
+}
@@ -0,0 +1,285 @@
+package com.tycoon177.chip8.bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import com.tycoon177.chip8.system.Computer;
+import com.tycoon177.chip8.system.Display;
+import com.tycoon177.chip8.system.Memory;
+import com.tycoon177.chip8.system.Rom;
+
+/**
+ * Micro benchmarks for the hot paths of the interpreter. Every benchmark is
+ * warmed up, then measured for a number of iterations, and reports the time
+ * and the bytes allocated per operation.
+ * 
+ * @author Benjamin McHone
+ *
+ */
+public class Benchmarks {
+	private static final int WARMUP_ITERATIONS = 5;
+	private static final int MEASURE_ITERATIONS = 5;
+	private static final long ITERATION_NANOS = 200000000L;
+	private static final String[] ROMS = { "IBM.ch8", "BLINKY.ch8", "AIRPLANE.ch8" };
+
+	/**
+	 * Some work to be measured
+	 * 
+	 * @author Benjamin McHone
+	 *
+	 */
+	public interface Operation {
+		/**
+		 * Does a small amount of work
+		 * 
+		 * @return The amount of operations that were done
+		 */
+		public long run();
+	}
+
+	// Results are added here so that the JIT cannot throw the work away.
+	private static volatile long sink;
+	private PrintStream out;
+	private String filter;
+
+	/**
+	 * Creates the benchmark suite
+	 * 
+	 * @param out
+	 *            Where to print the results
+	 * @param filter
+	 *            Only benchmarks containing this in their name are run
+	 */
+	public Benchmarks(PrintStream out, String filter) {
+		this.out = out;
+		this.filter = filter;
+	}
+
+	/**
+	 * Runs all of the benchmarks
+	 * 
+	 * @throws IOException
+	 *             Thrown when a bundled rom cannot be read
+	 */
+	public void runAll() throws IOException {
+		out.printf("%-24s %12s %12s %10s%n", "Benchmark", "ns/op", "ops/s", "B/op");
+		opcodeBenchmarks();
+		displayBenchmarks();
+		memoryBenchmarks();
+		romBenchmarks();
+	}
+
+	/**
+	 * Measures evaluateOpcode for one opcode of each family
+	 */
+	private void opcodeBenchmarks() {
+		opcode("00E0", 0x00E0);
+		opcode("00CN", 0x00C1);
+		opcode("00FB", 0x00FB);
+		opcode("00FC", 0x00FC);
+		opcode("1NNN", 0x1200);
+		opcode("2NNN+00EE", 0x2200, 0x00EE);
+		opcode("3XNN", 0x3105);
+		opcode("4XNN", 0x4105);
+		opcode("5XY0", 0x5120);
+		opcode("6XNN", 0x6105);
+		opcode("7XNN", 0x7101);
+		opcode("8XY0", 0x8120);
+		opcode("8XY1", 0x8121);
+		opcode("8XY2", 0x8122);
+		opcode("8XY3", 0x8123);
+		opcode("8XY4", 0x8124);
+		opcode("8XY5", 0x8125);
+		opcode("8XY6", 0x8126);
+		opcode("8XY7", 0x8127);
+		opcode("8XYE", 0x812E);
+		opcode("9XY0", 0x9120);
+		opcode("ANNN", 0xA300);
+		opcode("BNNN", 0xB200);
+		opcode("CXNN", 0xC1FF);
+		opcode("DXYN", 0xD125);
+		opcode("DXY0", 0xD120);
+		opcode("EX9E", 0xE19E);
+		opcode("EXA1", 0xE1A1);
+		opcode("FX07", 0xF107);
+		opcode("FX15", 0xF115);
+		opcode("FX18", 0xF118);
+		opcode("FX1E", 0xF11E);
+		opcode("FX29", 0xF129);
+		opcode("FX30", 0xF130);
+		opcode("FX33", 0xF133);
+		opcode("FX55", 0xF355);
+		opcode("FX65", 0xF365);
+	}
+
+	/**
+	 * Measures a sequence of opcodes on a fresh computer. V1 and V2 hold small
+	 * values and I points at free memory, so every opcode stays in range.
+	 * 
+	 * @param family
+	 *            The name of the opcode family
+	 * @param opcodes
+	 *            The opcodes to evaluate for each operation
+	 */
+	private void opcode(String family, int... opcodes) {
+		Computer computer = new Computer();
+		Operation operation = () -> {
+			computer.evaluateOpcode(0x6105);
+			computer.evaluateOpcode(0x6203);
+			computer.evaluateOpcode(0xA300);
+			for (int opcode : opcodes) {
+				computer.evaluateOpcode(opcode);
+			}
+			return 1;
+		};
+		measure("evaluateOpcode " + family, operation);
+	}
+
+	/**
+	 * Measures drawing and scrolling at both resolutions
+	 */
+	private void displayBenchmarks() {
+		for (boolean high : new boolean[] { false, true }) {
+			Display display = new Display(64, 32);
+			if (high) {
+				display.setHigh();
+			}
+			String size = high ? " 128x64" : " 64x32";
+			Random random = new Random(0);
+			int[] sprites = new int[1024];
+			for (int i = 0; i < sprites.length; i++) {
+				sprites[i] = random.nextInt();
+			}
+			int[] index = new int[1];
+			measure("draw" + size, () -> {
+				int sprite = sprites[index[0]++ & (sprites.length - 1)];
+				sink += display.draw(sprite & 0xff, (sprite >> 8) & 0xff, sprite >> 16) ? 1 : 0;
+				return 1;
+			});
+			measure("scrollDown" + size, () -> {
+				display.scrollDown(1);
+				return 1;
+			});
+			measure("scrollRight" + size, () -> {
+				display.scrollRight(4);
+				return 1;
+			});
+			measure("scrollLeft" + size, () -> {
+				display.scrollLeft(4);
+				return 1;
+			});
+		}
+	}
+
+	/**
+	 * Measures reads and writes of single bytes of memory
+	 */
+	private void memoryBenchmarks() {
+		Memory memory = new Memory(4096);
+		int[] index = new int[1];
+		measure("getMemory", () -> {
+			sink += memory.getMemory(0x200 + (index[0]++ & 0xff));
+			return 1;
+		});
+		measure("setMemory", () -> {
+			memory.setMemory(0x200 + (index[0] & 0xff), index[0]++);
+			return 1;
+		});
+	}
+
+	/**
+	 * Measures the instructions per second of the bundled roms
+	 * 
+	 * @throws IOException
+	 *             Thrown when a rom cannot be read
+	 */
+	private void romBenchmarks() throws IOException {
+		for (String name : ROMS) {
+			Computer computer = new Computer();
+			computer.loadRom(new Rom(name));
+			measure("rom " + name, () -> computer.executeBlock());
+		}
+	}
+
+	/**
+	 * Warms up and then measures an operation, printing the results
+	 * 
+	 * @param name
+	 *            The name of the benchmark
+	 * @param operation
+	 *            The operation to measure
+	 */
+	private void measure(String name, Operation operation) {
+		if (filter != null && !name.contains(filter)) {
+			return;
+		}
+		for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+			iteration(operation);
+		}
+		long operations = 0;
+		long nanos = 0;
+		long bytes = 0;
+		for (int i = 0; i < MEASURE_ITERATIONS; i++) {
+			long allocated = allocatedBytes();
+			long start = System.nanoTime();
+			operations += iteration(operation);
+			nanos += System.nanoTime() - start;
+			bytes += allocatedBytes() - allocated;
+		}
+		out.printf("%-24s %12.2f %12.0f %10.1f%n", name, (double) nanos / operations, operations * 1e9 / nanos,
+				(double) bytes / operations);
+	}
+
+	/**
+	 * Runs an operation over and over for one iteration
+	 * 
+	 * @param operation
+	 *            The operation to run
+	 * @return The amount of operations done
+	 */
+	private long iteration(Operation operation) {
+		long operations = 0;
+		long end = System.nanoTime() + ITERATION_NANOS;
+		do {
+			for (int i = 0; i < 1000; i++) {
+				operations += operation.run();
+			}
+		} while (System.nanoTime() < end);
+		return operations;
+	}
+
+	/**
+	 * Gets the amount of bytes allocated by this thread so far
+	 * 
+	 * @return The bytes allocated, or 0 when the JVM cannot tell
+	 */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0;
+	}
+
+	/**
+	 * Runs the benchmarks from the command line. Anything the emulator prints
+	 * while being measured is thrown away so that only the results are shown.
+	 * 
+	 * @param args
+	 *            Optionally, only run benchmarks with this in their name
+	 * @throws IOException
+	 *             Thrown when a bundled rom cannot be read
+	 */
+	public static void main(String[] args) throws IOException {
+		PrintStream console = System.out;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+		try {
+			new Benchmarks(console, args.length > 0 ? args[0] : null).runAll();
+		} finally {
+			System.setOut(console);
+		}
+	}
+}
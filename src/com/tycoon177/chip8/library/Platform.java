@@ -0,0 +1,70 @@
+package com.tycoon177.chip8.library;
+
+import com.tycoon177.chip8.system.Opcode;
+
+/**
+ * The machines that a rom can be written for
+ * 
+ * @author Benjamin McHone
+ *
+ */
+public enum Platform {
+	CHIP8("CHIP-8"), SCHIP("SCHIP");
+
+	private String name;
+
+	/**
+	 * Creates a platform
+	 * 
+	 * @param name
+	 *            The name shown to the user
+	 */
+	private Platform(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Gets whether an opcode family only exists on the SCHIP, so that a rom
+	 * using it needs the SCHIP to run
+	 * 
+	 * @param type
+	 *            The opcode family
+	 * @return Whether the family is SCHIP only
+	 */
+	public static boolean isSchipOnly(Opcode type) {
+		switch (type) {
+			case OPCODE_00CN:
+			case OPCODE_00FB:
+			case OPCODE_00FC:
+			case OPCODE_00FE:
+			case OPCODE_00FF:
+			case OPCODE_DXY0:
+			case OPCODE_FX30:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * Finds a platform by its name, ignoring case and dashes
+	 * 
+	 * @param name
+	 *            The name, such as chip8 or SCHIP
+	 * @return The platform
+	 */
+	public static Platform parse(String name) {
+		String wanted = name.replace("-", "");
+		for (Platform platform : values()) {
+			if (platform.name().equalsIgnoreCase(wanted)) {
+				return platform;
+			}
+		}
+		throw new IllegalArgumentException("Unknown platform: " + name);
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
@@ -0,0 +1,358 @@
+package com.tycoon177.chip8.library;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+import com.tycoon177.chip8.analysis.BasicBlock;
+import com.tycoon177.chip8.analysis.ControlFlowGraph;
+import com.tycoon177.chip8.system.Instruction;
+import com.tycoon177.chip8.system.Opcode;
+import com.tycoon177.chip8.system.Rom;
+
+/**
+ * Knows the hash, size, platform and opcodes of every rom in a directory.
+ * Everything is kept in an index file in the {@link UserCache}, named after
+ * the path of the directory, so a rom is only read again when its size or
+ * modification time changes. Nothing is written into the directory itself.
+ * <p>
+ * The index starts with {@link #MAGIC}, the amount of opcode families and the
+ * amount of roms. Each rom is its file name, modification time, size, hash and
+ * platform, then the amount of families it uses followed by each family and
+ * how many times it was seen.
+ * 
+ * @author Benjamin McHone
+ *
+ */
+public class RomCatalog {
+	/**
+	 * The directory of the cache that indexes are kept in
+	 */
+	public static final String CACHE_DIRECTORY = "library";
+	/**
+	 * Marks the start of an index file, "C8L" and the format version
+	 */
+	public static final int MAGIC = 0x43384c01;
+	private static final Opcode[] FAMILIES = Opcode.values();
+	private File directory;
+	private File indexFile;
+	private Map<String, Entry> entries;
+
+	/**
+	 * Opens the catalog of a directory, reading the roms that are new or
+	 * changed since the index was written and saving the index again if
+	 * anything changed
+	 * 
+	 * @param directory
+	 *            The directory holding the .ch8 files
+	 * @throws IOException
+	 *             Thrown when the directory cannot be listed or the cache
+	 *             cannot be made
+	 */
+	public RomCatalog(File directory) throws IOException {
+		this.directory = directory;
+		indexFile = new File(UserCache.getDirectory(CACHE_DIRECTORY),
+				UserCache.name(directory.getCanonicalPath()) + ".index");
+		File[] files = directory.listFiles((dir, name) -> name.toLowerCase().endsWith(".ch8"));
+		if (files == null) {
+			throw new FileNotFoundException("Not a directory: " + directory);
+		}
+		Map<String, Entry> indexed = readIndex();
+		entries = new TreeMap<>();
+		boolean changed = false;
+		for (File file : files) {
+			Entry entry = indexed.remove(file.getName());
+			if (entry == null || entry.size != file.length() || entry.lastModified != file.lastModified()) {
+				try {
+					entry = Entry.scan(file);
+				} catch (IOException e) {
+					e.printStackTrace();
+					continue;
+				}
+				changed = true;
+			}
+			entry.file = file;
+			entries.put(file.getName(), entry);
+		}
+		if (changed || !indexed.isEmpty()) {
+			try {
+				save();
+			} catch (IOException e) {
+				// The directory can still be catalogued, just not remembered
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Reads the index file of the directory from the cache
+	 * 
+	 * @return The entries in the index by file name, or none if there is no
+	 *         usable index
+	 */
+	private Map<String, Entry> readIndex() {
+		Map<String, Entry> indexed = new HashMap<>();
+		if (!indexFile.exists()) {
+			return indexed;
+		}
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+			// Indexes written before the opcode families changed are read
+			// again from scratch
+			if (input.readInt() != MAGIC || input.readUnsignedByte() != FAMILIES.length) {
+				return indexed;
+			}
+			int count = input.readInt();
+			for (int i = 0; i < count; i++) {
+				Entry entry = new Entry();
+				String name = input.readUTF();
+				entry.lastModified = input.readLong();
+				entry.size = input.readInt();
+				entry.hash = input.readUTF();
+				entry.platform = Platform.values()[input.readUnsignedByte()];
+				entry.counts = new int[FAMILIES.length];
+				int used = input.readUnsignedByte();
+				for (int j = 0; j < used; j++) {
+					entry.counts[input.readUnsignedByte()] = input.readInt();
+				}
+				indexed.put(name, entry);
+			}
+		} catch (EOFException | ArrayIndexOutOfBoundsException e) {
+			indexed.clear();
+		} catch (IOException e) {
+			e.printStackTrace();
+			indexed.clear();
+		}
+		return indexed;
+	}
+
+	/**
+	 * Writes the index file of the directory to the cache. It is written
+	 * next to the old one and moved over it, so a crash never leaves half an
+	 * index.
+	 * 
+	 * @throws IOException
+	 *             Thrown when the index cannot be written
+	 */
+	public void save() throws IOException {
+		File temp = File.createTempFile("index", ".tmp", indexFile.getParentFile());
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+			output.writeInt(MAGIC);
+			output.writeByte(FAMILIES.length);
+			output.writeInt(entries.size());
+			for (Entry entry : entries.values()) {
+				output.writeUTF(entry.file.getName());
+				output.writeLong(entry.lastModified);
+				output.writeInt(entry.size);
+				output.writeUTF(entry.hash);
+				output.writeByte(entry.platform.ordinal());
+				int used = 0;
+				for (int count : entry.counts) {
+					if (count != 0) {
+						used++;
+					}
+				}
+				output.writeByte(used);
+				for (int j = 0; j < entry.counts.length; j++) {
+					if (entry.counts[j] != 0) {
+						output.writeByte(j);
+						output.writeInt(entry.counts[j]);
+					}
+				}
+			}
+		}
+		Files.move(temp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Gets the directory that is catalogued
+	 * 
+	 * @return The directory
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Gets the file in the cache that the index of the directory is kept in
+	 * 
+	 * @return The index file
+	 */
+	public File getIndexFile() {
+		return indexFile;
+	}
+
+	/**
+	 * Gets every rom in the directory
+	 * 
+	 * @return The roms sorted by file name
+	 */
+	public List<Entry> getEntries() {
+		return new ArrayList<>(entries.values());
+	}
+
+	/**
+	 * Gets the roms in the directory that match a filter
+	 * 
+	 * @param filter
+	 *            The filter that roms have to pass
+	 * @return The matching roms sorted by file name
+	 */
+	public List<Entry> find(Predicate<Entry> filter) {
+		List<Entry> found = new ArrayList<>();
+		for (Entry entry : entries.values()) {
+			if (filter.test(entry)) {
+				found.add(entry);
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * What is known about a single rom
+	 * 
+	 * @author Benjamin McHone
+	 *
+	 */
+	public static class Entry {
+		private File file;
+		private long lastModified;
+		private int size;
+		private String hash;
+		private Platform platform;
+		private int[] counts;
+
+		/**
+		 * Reads a rom and works out everything about it. Only the code found
+		 * by the {@link ControlFlowGraph} is counted, so sprites and other
+		 * data stored between the code are not mistaken for instructions.
+		 * Code only reached through BNNN is not counted.
+		 * 
+		 * @param file
+		 *            The rom file
+		 * @return The entry for the rom
+		 * @throws IOException
+		 *             Thrown when the rom cannot be read
+		 */
+		public static Entry scan(File file) throws IOException {
+			long lastModified = file.lastModified();
+			Rom rom = new Rom(file.getPath());
+			Entry entry = new Entry();
+			entry.file = file;
+			entry.lastModified = lastModified;
+			entry.size = rom.getLength();
+			entry.hash = rom.getHash();
+			entry.counts = new int[FAMILIES.length];
+			entry.platform = Platform.CHIP8;
+			for (BasicBlock block : new ControlFlowGraph(rom).getBlocks()) {
+				for (Instruction instruction : block.getInstructions()) {
+					Opcode type = instruction.getType();
+					entry.counts[type.ordinal()]++;
+					if (Platform.isSchipOnly(type)) {
+						entry.platform = Platform.SCHIP;
+					}
+				}
+			}
+			return entry;
+		}
+
+		/**
+		 * Gets the rom file
+		 * 
+		 * @return The file
+		 */
+		public File getFile() {
+			return file;
+		}
+
+		/**
+		 * Gets the file name of the rom
+		 * 
+		 * @return The name
+		 */
+		public String getName() {
+			return file.getName();
+		}
+
+		/**
+		 * Gets the size of the rom
+		 * 
+		 * @return The amount of bytes in the rom
+		 */
+		public int getSize() {
+			return size;
+		}
+
+		/**
+		 * Gets the SHA-256 hash of the rom, which is the same for copies of
+		 * the rom under other names
+		 * 
+		 * @return The hash in hexadecimal
+		 */
+		public String getHash() {
+			return hash;
+		}
+
+		/**
+		 * Gets the platform the rom was written for
+		 * 
+		 * @return SCHIP if the rom uses any SCHIP only opcode, otherwise
+		 *         CHIP-8
+		 */
+		public Platform getPlatform() {
+			return platform;
+		}
+
+		/**
+		 * Gets how many times an opcode family appears in the rom
+		 * 
+		 * @param type
+		 *            The opcode family
+		 * @return The amount of times it appears
+		 */
+		public int getCount(Opcode type) {
+			return counts[type.ordinal()];
+		}
+
+		/**
+		 * Gets whether an opcode family appears in the rom
+		 * 
+		 * @param type
+		 *            The opcode family
+		 * @return Whether it appears at least once
+		 */
+		public boolean uses(Opcode type) {
+			return counts[type.ordinal()] != 0;
+		}
+
+		/**
+		 * Loads the rom
+		 * 
+		 * @return The rom
+		 * @throws IOException
+		 *             Thrown when the rom cannot be read
+		 */
+		public Rom load() throws IOException {
+			return new Rom(file.getPath());
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%-20s %5d bytes  %-6s %s", getName(), size, platform, hash.substring(0, 12));
+		}
+	}
+}
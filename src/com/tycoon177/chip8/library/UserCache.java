@@ -0,0 +1,76 @@
+package com.tycoon177.chip8.library;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * The directories that the emulator keeps files it can always make again in,
+ * such as rom indexes and compiled roms. They live under .chip8 in the home
+ * directory of the user, or under the directory named by the chip8.cache
+ * system property, and are only readable by the user that made them.
+ * 
+ * @author Benjamin McHone
+ *
+ */
+public class UserCache {
+	/**
+	 * The system property that moves the cache somewhere else
+	 */
+	public static final String PROPERTY = "chip8.cache";
+
+	private UserCache() {
+	}
+
+	/**
+	 * Gets a directory of the cache, making it if it does not exist yet
+	 * 
+	 * @param name
+	 *            The name of the directory
+	 * @return The directory
+	 * @throws IOException
+	 *             Thrown when the directory cannot be made
+	 */
+	public static File getDirectory(String name) throws IOException {
+		String root = System.getProperty(PROPERTY);
+		Path directory = (root != null ? new File(root) : new File(System.getProperty("user.home"), ".chip8"))
+				.toPath().resolve(name);
+		if (!Files.isDirectory(directory)) {
+			if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+				Files.createDirectories(directory,
+						PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+			} else {
+				Files.createDirectories(directory);
+			}
+		}
+		return directory.toFile();
+	}
+
+	/**
+	 * Makes a short name for a file in the cache out of something too long
+	 * or unsafe to use as one, such as a path
+	 * 
+	 * @param key
+	 *            What the file is for
+	 * @return The start of the SHA-256 hash of the key in hexadecimal
+	 */
+	public static String name(String key) {
+		try {
+			StringBuilder hex = new StringBuilder();
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+			for (int j = 0; j < 8; j++) {
+				hex.append(String.format("%02x", digest[j]));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			// Every JVM has to provide SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+}
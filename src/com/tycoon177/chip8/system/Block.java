@@ -0,0 +1,143 @@
+package com.tycoon177.chip8.system;
+
+/**
+ * A straight line run of decoded instructions that ends at a jump, call,
+ * return, skip or key wait, along with the runs of it that can be fused.
+ * 
+ * @author Benjamin McHone
+ *
+ */
+public class Block {
+	private int start;
+	private Instruction[] instructions;
+	private Fusion[] fusions;
+	private int end;
+	private boolean valid;
+
+	/**
+	 * Creates a block
+	 * 
+	 * @param start
+	 *            The address of the first instruction
+	 * @param instructions
+	 *            The instructions in the block, in order
+	 */
+	public Block(int start, Instruction[] instructions) {
+		this(start, instructions, new Fusion[instructions.length]);
+	}
+
+	/**
+	 * Creates a block with fused instructions
+	 * 
+	 * @param start
+	 *            The address of the first instruction
+	 * @param instructions
+	 *            The instructions in the block, in order
+	 * @param fusions
+	 *            The fusion starting at each instruction, or null where there
+	 *            is none
+	 */
+	public Block(int start, Instruction[] instructions, Fusion[] fusions) {
+		this.start = start;
+		this.instructions = instructions;
+		this.fusions = fusions;
+		this.valid = true;
+		end = start + instructions.length * 2;
+		for (int j = 0; j < fusions.length; j++) {
+			if (fusions[j] != null) {
+				end = Math.max(end, start + (j + fusions[j].getLength()) * 2);
+			}
+		}
+	}
+
+	/**
+	 * Gets the address of the first instruction
+	 * 
+	 * @return The start address
+	 */
+	public int getStart() {
+		return start;
+	}
+
+	/**
+	 * Gets the address just past the last byte of the block, including the
+	 * jump of a loop fused at its end
+	 * 
+	 * @return The end address
+	 */
+	public int getEnd() {
+		return end;
+	}
+
+	/**
+	 * Gets the instructions in the block
+	 * 
+	 * @return The instructions
+	 */
+	public Instruction[] getInstructions() {
+		return instructions;
+	}
+
+	/**
+	 * Gets the fusion starting at each instruction
+	 * 
+	 * @return The fusions, null where there is none
+	 */
+	public Fusion[] getFusions() {
+		return fusions;
+	}
+
+	/**
+	 * Checks if the block covers a byte of memory
+	 * 
+	 * @param address
+	 *            The address to check
+	 * @return Whether the address is part of the block
+	 */
+	public boolean covers(int address) {
+		return address >= start && address < getEnd();
+	}
+
+	/**
+	 * Whether the block still matches memory
+	 * 
+	 * @return False once memory under the block has been written
+	 */
+	public boolean isValid() {
+		return valid;
+	}
+
+	/**
+	 * Marks the block as no longer matching memory
+	 */
+	public void invalidate() {
+		valid = false;
+	}
+
+	/**
+	 * Checks if an instruction ends a block
+	 * 
+	 * @param type
+	 *            The opcode family
+	 * @return Whether it changes the flow of the program
+	 */
+	public static boolean endsBlock(Opcode type) {
+		switch (type) {
+			case OPCODE_00EE:
+			case OPCODE_1NNN:
+			case OPCODE_2NNN:
+			case OPCODE_BNNN:
+			case OPCODE_3XNN:
+			case OPCODE_4XNN:
+			case OPCODE_5XY0:
+			case OPCODE_9XY0:
+			case OPCODE_EX9E:
+			case OPCODE_EXA1:
+			case OPCODE_FX0A:
+			case UNKNOWN:
+				return true;
+			default:
+				return false;
+		}
+	}
+}
@@ -0,0 +1,162 @@
+package com.tycoon177.chip8.system;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Second execution tier. Counts how often each address is started from and
+ * once it is hot, builds a block of decoded instructions for it. Blocks are
+ * thrown away when memory that they cover is written.
+ * 
+ * @author Benjamin McHone
+ *
+ */
+public class BlockCache implements MemoryListener {
+	/**
+	 * Times an address has to be reached before a block is built for it.
+	 */
+	public static final int HOT_THRESHOLD = 16;
+	/**
+	 * The most instructions that a single block may hold
+	 */
+	public static final int MAX_BLOCK_LENGTH = 64;
+
+	private DecodeCache decodeCache;
+	private Block[] blocks;
+	private int[] hits;
+	// How many live blocks cover each byte of memory
+	private int[] coverage;
+	private ArrayList<Block> liveBlocks;
+	private long invalidations;
+	private int computerId;
+
+	/**
+	 * Creates a block cache
+	 * 
+	 * @param ram
+	 *            The memory the blocks are built from
+	 * @param decodeCache
+	 *            The cache to get decoded instructions from
+	 */
+	public BlockCache(Memory ram, DecodeCache decodeCache) {
+		this.decodeCache = decodeCache;
+		int size = ram.getSize();
+		blocks = new Block[size];
+		hits = new int[size];
+		coverage = new int[size];
+		liveBlocks = new ArrayList<>();
+		ram.addMemoryListener(this);
+	}
+
+	/**
+	 * Gets the block starting at an address
+	 * 
+	 * @param address
+	 *            The program counter
+	 * @return The block, or null when the address is not hot yet
+	 */
+	public Block get(int address) {
+		if (address < 0 || address >= blocks.length) {
+			return null;
+		}
+		Block block = blocks[address];
+		if (block == null && ++hits[address] >= HOT_THRESHOLD) {
+			block = compile(address);
+		}
+		return block;
+	}
+
+	/**
+	 * Builds the block that starts at an address and finds the runs of it
+	 * that can be fused
+	 * 
+	 * @param start
+	 *            The address of the first instruction
+	 * @return The block
+	 */
+	private Block compile(int start) {
+		ArrayList<Instruction> instructions = new ArrayList<>();
+		int address = start;
+		while (address + 1 < blocks.length && instructions.size() < MAX_BLOCK_LENGTH) {
+			Instruction instruction = decodeCache.get(address);
+			instructions.add(instruction);
+			address += 2;
+			if (Block.endsBlock(instruction.getType())) {
+				break;
+			}
+		}
+		Instruction[] body = instructions.toArray(new Instruction[instructions.size()]);
+		Instruction next = address + 1 < blocks.length ? decodeCache.get(address) : null;
+		Fusion[] fusions = new Fusion[body.length];
+		for (int j = 0; j < body.length; j++) {
+			fusions[j] = Fusion.find(body, j, start + j * 2, next);
+		}
+		Block block = new Block(start, body, fusions);
+		for (int i = block.getStart(); i < block.getEnd(); i++) {
+			coverage[i]++;
+		}
+		blocks[start] = block;
+		liveBlocks.add(block);
+		return block;
+	}
+
+	@Override
+	public void memoryChanged(int address) {
+		if (coverage[address] == 0) {
+			return;
+		}
+		for (int i = liveBlocks.size() - 1; i >= 0; i--) {
+			Block block = liveBlocks.get(i);
+			if (block.covers(address)) {
+				block.invalidate();
+				invalidations++;
+				BlockInvalidatedEvent event = new BlockInvalidatedEvent();
+				if (event.shouldCommit()) {
+					event.computer = computerId;
+					event.start = block.getStart();
+					event.instructions = block.getInstructions().length;
+					event.address = address;
+					event.commit();
+				}
+				for (int j = block.getStart(); j < block.getEnd(); j++) {
+					coverage[j]--;
+				}
+				blocks[block.getStart()] = null;
+				hits[block.getStart()] = 0;
+				liveBlocks.remove(i);
+			}
+		}
+	}
+
+	/**
+	 * Gets how many blocks have been thrown away because memory under them
+	 * was written
+	 * 
+	 * @return The invalidation count
+	 */
+	public long getInvalidations() {
+		return invalidations;
+	}
+
+	/**
+	 * Sets the id of the computer the cache belongs to, reported in flight
+	 * recorder events
+	 * 
+	 * @param computerId
+	 *            The computer id
+	 */
+	void setComputerId(int computerId) {
+		this.computerId = computerId;
+	}
+
+	@Override
+	public void memoryReset() {
+		for (Block block : liveBlocks) {
+			block.invalidate();
+		}
+		liveBlocks.clear();
+		Arrays.fill(blocks, null);
+		Arrays.fill(hits, 0);
+		Arrays.fill(coverage, 0);
+	}
+}
@@ -0,0 +1,29 @@
+package com.tycoon177.chip8.system;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for a compiled block being thrown away because memory
+ * under it was written
+ * 
+ * @author Benjamin McHone
+ *
+ */
+@Name("com.tycoon177.chip8.BlockInvalidated")
+@Label("Block Invalidated")
+@Category("CHIP-8")
+@Description("A compiled block was thrown away because memory under it was written")
+class BlockInvalidatedEvent extends Event {
+	@Label("Computer")
+	int computer;
+	@Label("Block Start")
+	int start;
+	@Label("Instructions")
+	int instructions;
+	@Label("Address Written")
+	int address;
+}
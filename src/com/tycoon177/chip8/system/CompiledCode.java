@@ -0,0 +1,324 @@
+package com.tycoon177.chip8.system;
+
+import java.util.Arrays;
+
+/**
+ * The base of the classes that roms are compiled to ahead of time. Each basic
+ * block of the rom is compiled to a method that runs the whole block,
+ * including the jump, call, return or skip at its end, and gives back the
+ * address to go on from. Blocks are chained together inside the compiled code
+ * until it runs out of cycles, reaches an address that was not compiled, or
+ * reaches a key wait, which is left to the interpreter.
+ * <p>
+ * A block is only run while the memory under it still holds the rom it was
+ * compiled from, so code the rom writes over falls back to the interpreter.
+ * Each byte of the rom knows the block it belongs to, so a write only has to
+ * look at that one block, or at each of the blocks that overlap there.
+ * <p>
+ * Subclasses are generated, loaded in their own class loader, and only use
+ * the protected members here to reach the computer.
+ * 
+ * @author Benjamin McHone
+ *
+ */
+public abstract class CompiledCode implements MemoryListener {
+	/**
+	 * Changes whenever generated classes have to be compiled again
+	 */
+	public static final int VERSION = 2;
+	/**
+	 * Added to the address a block returns when the compiled code has to stop
+	 * there
+	 */
+	protected static final int STOP = 0x10000;
+	/**
+	 * The addresses that blocks can start at
+	 */
+	protected static final int ADDRESSES = 0x1000;
+	private static final int ROM_START = 0x200;
+	// States of a block
+	private static final byte UNCHECKED = 0, LIVE = 1, STALE = 2;
+	private String hash;
+	private byte[] image;
+	private int[] starts;
+	private int[] lengths;
+	// The block each byte of memory belongs to, or -1
+	private int[] owner;
+	// The other blocks a byte belongs to when blocks overlap, which happens
+	// when code jumps into the middle of an instruction, or null
+	private int[][] alsoOwned;
+	private byte[] state;
+	private Computer computer;
+	private Memory ram;
+	private Keyboard keyboard;
+	/**
+	 * The block starting at each address, or -1
+	 */
+	protected final int[] blockAt;
+	/**
+	 * The registers of the computer the code runs on
+	 */
+	protected int[] v;
+	/**
+	 * The instructions that may still be run before the clock has to be
+	 * looked at
+	 */
+	protected int left;
+
+	/**
+	 * Creates compiled code
+	 * 
+	 * @param version
+	 *            The {@link #VERSION} the code was generated for
+	 * @param hash
+	 *            The hash of the rom that was compiled
+	 * @param image
+	 *            The bytes of the rom, one per character
+	 * @param starts
+	 *            The start address of each block
+	 * @param lengths
+	 *            The amount of instructions in each block
+	 */
+	protected CompiledCode(int version, String hash, String image, int[] starts, int[] lengths) {
+		if (version != VERSION) {
+			throw new IllegalStateException("Compiled for version " + version + " instead of " + VERSION);
+		}
+		this.hash = hash;
+		this.image = new byte[image.length()];
+		for (int j = 0; j < this.image.length; j++) {
+			this.image[j] = (byte) image.charAt(j);
+		}
+		this.starts = starts;
+		this.lengths = lengths;
+		blockAt = new int[ADDRESSES];
+		owner = new int[ADDRESSES];
+		alsoOwned = new int[ADDRESSES][];
+		Arrays.fill(blockAt, -1);
+		Arrays.fill(owner, -1);
+		for (int block = 0; block < starts.length; block++) {
+			blockAt[starts[block]] = block;
+			for (int address = starts[block]; address < starts[block] + lengths[block] * 2; address++) {
+				if (owner[address] < 0) {
+					owner[address] = block;
+				} else if (alsoOwned[address] == null) {
+					alsoOwned[address] = new int[] { block };
+				} else {
+					int[] others = Arrays.copyOf(alsoOwned[address], alsoOwned[address].length + 1);
+					others[others.length - 1] = block;
+					alsoOwned[address] = others;
+				}
+			}
+		}
+		state = new byte[starts.length];
+	}
+
+	/**
+	 * Gets the hash of the rom the code was compiled from
+	 * 
+	 * @return The SHA-256 hash in hexadecimal
+	 */
+	public String getHash() {
+		return hash;
+	}
+
+	/**
+	 * Gets the amount of blocks that were compiled
+	 * 
+	 * @return The block count
+	 */
+	public int getBlockCount() {
+		return starts.length;
+	}
+
+	/**
+	 * Connects the code to the computer it runs on
+	 * 
+	 * @param computer
+	 *            The computer
+	 * @param ram
+	 *            The memory of the computer
+	 * @param registers
+	 *            The registers of the computer
+	 */
+	void attach(Computer computer, Memory ram, int[] registers) {
+		if (this.computer != null) {
+			throw new IllegalStateException("Compiled code can only be used by one computer");
+		}
+		this.computer = computer;
+		this.ram = ram;
+		this.v = registers;
+		keyboard = computer.getKeyboard();
+		Arrays.fill(state, UNCHECKED);
+		ram.addMemoryListener(this);
+	}
+
+	/**
+	 * Disconnects the code from its computer, after which it may be attached
+	 * to another one
+	 */
+	void detach() {
+		ram.removeMemoryListener(this);
+		computer = null;
+		ram = null;
+		keyboard = null;
+		v = null;
+	}
+
+	/**
+	 * Runs compiled blocks starting at an address until one of them does not
+	 * fit in the cycles left or the code reaches an address it cannot run
+	 * 
+	 * @param address
+	 *            The program counter
+	 * @param cycles
+	 *            The most instructions that may be run
+	 * @return The address to go on from
+	 */
+	int run(int address, int cycles) {
+		left = cycles;
+		int next = execute(address);
+		return next >= STOP ? next - STOP : next;
+	}
+
+	/**
+	 * Gets how many of the cycles given to {@link #run(int, int)} were not
+	 * used
+	 * 
+	 * @return The cycles left
+	 */
+	int getLeft() {
+		return left;
+	}
+
+	/**
+	 * Runs blocks starting at an address, going on from each block to the
+	 * address it returns while that address starts a block
+	 * 
+	 * @param address
+	 *            The program counter
+	 * @return The address to go on from, plus {@link #STOP} when a block
+	 *         stopped there
+	 */
+	protected abstract int execute(int address);
+
+	/**
+	 * Checks if a block still matches memory, comparing it again if memory
+	 * under it was written since it was last compared
+	 * 
+	 * @param block
+	 *            The block
+	 * @return Whether the block may be run
+	 */
+	protected final boolean isLive(int block) {
+		byte current = state[block];
+		if (current == UNCHECKED) {
+			current = matches(block) ? LIVE : STALE;
+			state[block] = current;
+		}
+		return current == LIVE;
+	}
+
+	/**
+	 * Compares the instructions of a block with memory
+	 * 
+	 * @param block
+	 *            The block
+	 * @return Whether memory still holds them
+	 */
+	private boolean matches(int block) {
+		int start = starts[block];
+		for (int address = start; address < start + lengths[block] * 2; address++) {
+			if (ram.getMemory(address) != (image[address - ROM_START] & 0xff)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Runs an instruction on the interpreter
+	 * 
+	 * @param address
+	 *            The address of the instruction
+	 * @param instruction
+	 *            The instruction
+	 */
+	protected final void exec(int address, Instruction instruction) {
+		computer.executeAt(address, instruction);
+	}
+
+	/**
+	 * Runs an instruction that changes the flow of the program on the
+	 * interpreter, such as a call or a return
+	 * 
+	 * @param address
+	 *            The address of the instruction
+	 * @param instruction
+	 *            The instruction
+	 * @return The address to go on from
+	 */
+	protected final int branch(int address, Instruction instruction) {
+		computer.executeAt(address, instruction);
+		return computer.getProgramCounter() + 2;
+	}
+
+	/**
+	 * Reads a byte of memory
+	 * 
+	 * @param address
+	 *            The address
+	 * @return The byte
+	 */
+	protected final int read(int address) {
+		return ram.getMemory(address);
+	}
+
+	/**
+	 * Checks if a key is held down
+	 * 
+	 * @param key
+	 *            The key
+	 * @return Whether it is pressed
+	 */
+	protected final boolean isKeyPressed(int key) {
+		return keyboard.getKeyPressed(key);
+	}
+
+	/**
+	 * Gets the I register
+	 * 
+	 * @return I
+	 */
+	protected final int getI() {
+		return computer.getI();
+	}
+
+	/**
+	 * Sets the I register
+	 * 
+	 * @param i
+	 *            The new value of I
+	 */
+	protected final void setI(int i) {
+		computer.setI(i);
+	}
+
+	@Override
+	public void memoryChanged(int address) {
+		int block = owner[address];
+		if (block >= 0) {
+			state[block] = UNCHECKED;
+			int[] others = alsoOwned[address];
+			if (others != null) {
+				for (int other : others) {
+					state[other] = UNCHECKED;
+				}
+			}
+		}
+	}
+
+	@Override
+	public void memoryReset() {
+		Arrays.fill(state, UNCHECKED);
+	}
+}
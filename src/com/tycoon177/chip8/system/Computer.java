@@ -2,11 +2,15 @@ package com.tycoon177.chip8.system;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Random;
-import java.util.Stack;
-import java.util.zip.DataFormatException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
-import javax.swing.JFileChooser;
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 /**
  * The chip8 computer
@@ -15,59 +19,142 @@ import javax.swing.JFileChooser;
  *
  */
 public class Computer implements Runnable {
+	/**
+	 * The length of one 60 Hz frame in nanoseconds
+	 */
+	public static final long FRAME_NANOS = 1000000000L / 60L;
+	/**
+	 * The fewest instructions that may be run per frame
+	 */
+	public static final int MIN_INSTRUCTIONS_PER_FRAME = 10;
+	/**
+	 * The most instructions that may be run per frame
+	 */
+	public static final int MAX_INSTRUCTIONS_PER_FRAME = 1000;
+	// Marks the start of a snapshot, "C8S" and the format version
+	private static final int SNAPSHOT_MAGIC = 0x43385302;
+	// The bytes written by saveState
+	static final int STATE_SIZE = 85;
+	// The most bytes a second of rewind may take up
+	private static final long REWIND_BYTES_PER_SECOND = 256 * 1024;
+	private static final AtomicInteger nextId = new AtomicInteger();
+	private int id;
+	private ComputerMetrics metrics;
+	private ObjectName metricsName;
 	private Display display;
 	private Keyboard keyboard;
-	private long time;
 	private Memory ram;
-	private Random rand;
-	private Register i;
-	private Register[] registers;
-	private Stack<Address> returnStack;
+	private DecodeCache decodeCache;
+	private BlockCache blockCache;
+	// State of the xorshift generator behind CXNN, kept so it can be saved
+	private long randomState;
+	// V0-VF, each holding a single byte
+	private int[] registers;
+	private int i;
+	private int[] returnStack;
+	private int stackPointer;
 	private Timer delay, sound;
 	private Thread program;
 	private int programCounter;
 	private int startPlace;
 	private int romLength;
-	private boolean keepRunning;
+	private volatile boolean keepRunning;
+	private volatile int instructionsPerFrame;
+	private long cycleCount;
+	private long frameCount;
+	private int frameCycle;
+	private volatile boolean turbo;
+	private Rewind rewind;
+	private Tracer tracer;
+	private Profiler profiler;
+	private CompiledCode compiled;
+	// The addresses an unknown opcode was already reported at
+	private boolean[] unknownReported;
+	// Whether FX0A is waiting for a key to be pressed
+	private boolean waitingForKey;
+	// Key presses and releases from other threads, applied at the end of a
+	// frame so that they always land between the same two instructions. The
+	// low four bits are the key and bit four is whether it is pressed.
+	private ConcurrentLinkedQueue<Integer> keyEvents;
+	private KeyInput keyInput;
+	// The emulation thread while it is parked waiting for a key
+	private volatile Thread keyWaiter;
+	private InputRecorder recorder;
+	private InputReplay replay;
+	// The cycle of the next replayed key event
+	private long nextInputCycle;
+	// The cycle that skipping ahead never goes past
+	private long cycleLimit;
 
 	/**
 	 * Initializes the CHIP-8 System.
 	 */
 	public Computer() {
+		this(new Memory(4096));
+		resetComputerState();
+	}
+
+	/**
+	 * Initializes the CHIP-8 System around existing memory
+	 * 
+	 * @param ram
+	 *            The memory of the system
+	 */
+	private Computer(Memory ram) {
 		display = new Display(64, 32);
 		keyboard = new Keyboard();
-		ram = new Memory(4096);
-		registers = new Register[16];
-		for (int i = 0; i < registers.length; i++) {
-			registers[i] = new Register(Integer.toHexString(i));
-		}
-		i = new Register(2, "i");
-		returnStack = new Stack<>();
+		keyEvents = new ConcurrentLinkedQueue<>();
+		keyInput = (key, pressed) -> {
+			keyEvents.add(key | (pressed ? 0x10 : 0));
+			Thread waiter = keyWaiter;
+			if (waiter != null) {
+				LockSupport.unpark(waiter);
+			}
+		};
+		nextInputCycle = Long.MAX_VALUE;
+		cycleLimit = Long.MAX_VALUE;
+		this.ram = ram;
+		decodeCache = new DecodeCache(ram);
+		blockCache = new BlockCache(ram, decodeCache);
+		unknownReported = new boolean[ram.getSize()];
+		id = nextId.incrementAndGet();
+		blockCache.setComputerId(id);
+		metrics = new ComputerMetrics(this);
+		registers = new int[16];
+		returnStack = new int[16];
 		delay = new Timer();
 		sound = new Timer();
-		rand = new Random();
-		resetComputerState();
+		setRandomSeed(System.nanoTime());
+		instructionsPerFrame = 16;
 	}
 
 	/**
 	 * Resets all variables to their original state
 	 */
 	private void resetComputerState() {
+		stopRecording();
 		programCounter = 0x200;// Program execution starts at 0x200
 		startPlace = 0x200;
 		delay.setTimer(0);
 		sound.setTimer(0);
-		for (Register x : registers) {
-			x.setValue(0);
-		}
-		i.setValue(0);
-		while (!returnStack.empty()) {
-			returnStack.pop();
-		}
+		cycleCount = 0;
+		frameCount = 0;
+		frameCycle = 0;
+		Arrays.fill(registers, 0);
+		i = 0;
+		stackPointer = 0;
+		waitingForKey = false;
+		replay = null;
+		nextInputCycle = Long.MAX_VALUE;
+		keyEvents.clear();
 		keyboard.reset();
+		Arrays.fill(unknownReported, false);
 		display.cls();
 		ram.resetMemory();
-
+		if (rewind != null) {
+			rewind.clear();
+		}
+		publishCounters();
 	}
 
 	/**
@@ -92,7 +179,10 @@ public class Computer implements Runnable {
 	 * Acts as RET in asm. Returning to the last item on the stack.
 	 */
 	private void opcode_00EE() {
-		programCounter = returnStack.pop().getAddress() - 2;
+		if (stackPointer == 0) {
+			throw new IllegalStateException("Return with an empty stack");
+		}
+		programCounter = returnStack[--stackPointer] - 2;
 	}
 
 	/**
@@ -129,8 +219,8 @@ public class Computer implements Runnable {
 	 * @param address
 	 *            The address to jump to.
 	 */
-	private void opcode_1NNN(Address address) {
-		this.programCounter = address.getAddress() - 2;
+	private void opcode_1NNN(int address) {
+		this.programCounter = address - 2;
 	}
 
 	/**
@@ -139,8 +229,11 @@ public class Computer implements Runnable {
 	 * @param address
 	 *            The address of the subroutine.
 	 */
-	private void opcode_2NNN(Address address) {
-		returnStack.push(new Address(programCounter + 2));
+	private void opcode_2NNN(int address) {
+		if (stackPointer == returnStack.length) {
+			throw new IllegalStateException("Stack overflow");
+		}
+		returnStack[stackPointer++] = programCounter + 2;
 		opcode_1NNN(address);
 	}
 
@@ -152,8 +245,8 @@ public class Computer implements Runnable {
 	 * @param value
 	 *            The value to be checked
 	 */
-	private void opcode_3XNN(Register x, int value) {
-		if (x.getValue() == value) {
+	private void opcode_3XNN(int x, int value) {
+		if (registers[x] == value) {
 			programCounter += 2;
 		}
 	}
@@ -167,8 +260,8 @@ public class Computer implements Runnable {
 	 * @param value
 	 *            The value to be checked
 	 */
-	private void opcode_4XNN(Register x, int value) {
-		if (x.getValue() != value) {
+	private void opcode_4XNN(int x, int value) {
+		if (registers[x] != value) {
 			programCounter += 2;
 		}
 	}
@@ -182,8 +275,8 @@ public class Computer implements Runnable {
 	 * @param y
 	 *            the second register
 	 */
-	private void opcode_5XY0(Register x, Register y) {
-		if (x.getValue() == y.getValue()) {
+	private void opcode_5XY0(int x, int y) {
+		if (registers[x] == registers[y]) {
 			programCounter += 2;
 		}
 	}
@@ -196,8 +289,8 @@ public class Computer implements Runnable {
 	 * @param value
 	 *            the value that is put into Register
 	 */
-	private void opcode_6XNN(Register x, int value) {
-		x.setValue(value);
+	private void opcode_6XNN(int x, int value) {
+		registers[x] = value & 0xff;
 	}
 
 	/**
@@ -208,9 +301,8 @@ public class Computer implements Runnable {
 	 * @param value
 	 *            the value to add to the register
 	 */
-	private void opcode_7XNN(Register x, int value) {
-		int val = (x.getValue() + value);
-		x.setValue(val);
+	private void opcode_7XNN(int x, int value) {
+		registers[x] = (registers[x] + value) & 0xff;
 	}
 
 	/**
@@ -221,8 +313,8 @@ public class Computer implements Runnable {
 	 * @param y
 	 *            The register to get the value from
 	 */
-	private void opcode_8XY0(Register x, Register y) {
-		x.setValue(y.getValue());
+	private void opcode_8XY0(int x, int y) {
+		registers[x] = registers[y];
 	}
 
 	/**
@@ -233,8 +325,8 @@ public class Computer implements Runnable {
 	 * @param y
 	 *            Second Register
 	 */
-	private void opcode_8XY1(Register x, Register y) {
-		x.setValue(x.getValue() | y.getValue());
+	private void opcode_8XY1(int x, int y) {
+		registers[x] |= registers[y];
 	}
 
 	/**
@@ -245,8 +337,8 @@ public class Computer implements Runnable {
 	 * @param y
 	 *            Second register (VY)
 	 */
-	private void opcode_8XY2(Register x, Register y) {
-		x.setValue(x.getValue() & y.getValue());
+	private void opcode_8XY2(int x, int y) {
+		registers[x] &= registers[y];
 	}
 
 	/**
@@ -257,8 +349,8 @@ public class Computer implements Runnable {
 	 * @param y
 	 *            Second register (VY)
 	 */
-	private void opcode_8XY3(Register x, Register y) {
-		x.setValue(x.getValue() ^ y.getValue());
+	private void opcode_8XY3(int x, int y) {
+		registers[x] ^= registers[y];
 	}
 
 	/**
@@ -269,12 +361,12 @@ public class Computer implements Runnable {
 	 * @param y
 	 *            Second register
 	 */
-	private void opcode_8XY4(Register x, Register y) {
-		int val = x.getValue() + y.getValue();
+	private void opcode_8XY4(int x, int y) {
+		int val = registers[x] + registers[y];
 		int vf = (val > 0xff ? 1 : 0);
-		x.setValue(val & 0xff); // & 256 for modulous
+		registers[x] = val & 0xff; // & 256 for modulous
 		// Sets to 1 if there has been a carry
-		registers[0xF].setValue(vf);
+		registers[0xF] = vf;
 	}
 
 	/**
@@ -285,10 +377,9 @@ public class Computer implements Runnable {
 	 * @param y
 	 *            Second register
 	 */
-	private void opcode_8XY5(Register x, Register y) {
-		registers[0xF].setValue(x.getValue() > y.getValue() ? 0x1 : 0x0);
-		int val = x.getValue() - y.getValue();
-		x.setValue(val & 0xff);
+	private void opcode_8XY5(int x, int y) {
+		registers[0xF] = registers[x] > registers[y] ? 0x1 : 0x0;
+		registers[x] = (registers[x] - registers[y]) & 0xff;
 	}
 
 	/**
@@ -298,10 +389,10 @@ public class Computer implements Runnable {
 	 * @param x
 	 *            The register to shift right
 	 */
-	private void opcode_8XY6(Register x) {
-		int value = x.getValue();
-		registers[0xF].setValue((short) (value & 0x1));
-		value = (short) (value >> 1);
+	private void opcode_8XY6(int x) {
+		int value = registers[x];
+		registers[0xF] = value & 0x1;
+		value = value >> 1;
 	}
 
 	/**
@@ -313,12 +404,10 @@ public class Computer implements Runnable {
 	 * @param y
 	 *            Second register
 	 */
-	private void opcode_8XY7(Register x, Register y) {
-		int val = y.getValue() - x.getValue();
-		x.setValue(val & 0xff);
+	private void opcode_8XY7(int x, int y) {
+		registers[x] = (registers[y] - registers[x]) & 0xff;
 		// Sets to 1 if there has been a carry
-		int vf = y.getValue() > x.getValue() ? 0x1 : 0x0;
-		registers[0xF].setValue(vf);
+		registers[0xF] = registers[y] > registers[x] ? 0x1 : 0x0;
 	}
 
 	/**
@@ -327,11 +416,10 @@ public class Computer implements Runnable {
 	 * @param x
 	 *            The register to shift
 	 */
-	private void opcode_8XYE(Register x) {
-		int value = x.getValue();
-		registers[0xF].setValue((value & 0xF0) >> 4);
-		value = (value << 1);
-		x.setValue(value);
+	private void opcode_8XYE(int x) {
+		int value = registers[x];
+		registers[0xF] = (value & 0xF0) >> 4;
+		registers[x] = (value << 1) & 0xff;
 	}
 
 	/**
@@ -342,8 +430,8 @@ public class Computer implements Runnable {
 	 * @param y
 	 *            The second register (VY)
 	 */
-	private void opcode_9XY0(Register x, Register y) {
-		if (x.getValue() != y.getValue()) {
+	private void opcode_9XY0(int x, int y) {
+		if (registers[x] != registers[y]) {
 			programCounter += 2;
 		}
 	}
@@ -354,8 +442,8 @@ public class Computer implements Runnable {
 	 * @param address
 	 *            The address to set I as
 	 */
-	private void opcode_ANNN(Address address) {
-		i.setValue(address.getAddress());
+	private void opcode_ANNN(int address) {
+		i = address;
 	}
 
 	/**
@@ -364,8 +452,8 @@ public class Computer implements Runnable {
 	 * @param address
 	 *            Address to be added to the value of V0
 	 */
-	private void opcode_BNNN(Address address) {
-		this.programCounter = (registers[0].getValue() + address.getAddress()) - 2;
+	private void opcode_BNNN(int address) {
+		this.programCounter = (registers[0] + address) - 2;
 	}
 
 	/**
@@ -377,9 +465,8 @@ public class Computer implements Runnable {
 	 * @param val
 	 *            The value to be (&) with the random number
 	 */
-	private void opcode_CXNN(Register x, int val) {
-		int value = (val & rand.nextInt(256));
-		x.setValue(value);
+	private void opcode_CXNN(int x, int val) {
+		registers[x] = val & nextRandomByte();
 	}
 
 	/**
@@ -393,20 +480,17 @@ public class Computer implements Runnable {
 	 * @param height
 	 *            Height of sprite
 	 */
-	private void opcode_DXYN(Register x, Register y, int height) {
-		int xLoc = x.getValue();
-		int yLoc = y.getValue();
+	private void opcode_DXYN(int x, int y, int height) {
+		int xLoc = registers[x];
+		int yLoc = registers[y];
 		boolean turnedOff = false;
-		int value;
-		Address address = new Address(i.getValue());
-		registers[0xF].setValue((short) 0);
-		for (int i = 0; i < height; i++) {
-			value = ram.getMemory(address);
-			address.addToAddress(1);
-			turnedOff |= display.draw(xLoc, yLoc + i, value);
+		int address = i;
+		registers[0xF] = 0;
+		for (int row = 0; row < height; row++) {
+			turnedOff |= display.draw(xLoc, yLoc + row, ram.getMemory(address++));
 		}
 		if (turnedOff) {
-			registers[0xF].setValue(1);
+			registers[0xF] = 1;
 		}
 	}
 
@@ -419,27 +503,23 @@ public class Computer implements Runnable {
 	 * @param y
 	 *            The register with location y
 	 */
-	private void opcode_DXY0(Register x, Register y) {
-		int xLoc = x.getValue();
-		int yLoc = y.getValue();
+	private void opcode_DXY0(int x, int y) {
+		int xLoc = registers[x];
+		int yLoc = registers[y];
 		boolean turnedOff = false;
 		int value;
-		Address address = new Address(i.getValue());
-		registers[0xF].setValue((short) 0);
-		for (int i = 0; i < 16; i++) {
-			value = ram.getMemory(address);
-			System.out.println(Integer.toHexString(value));
-			address.addToAddress(1);
-			turnedOff |= display.draw(xLoc, yLoc + i, value);
+		int address = i;
+		registers[0xF] = 0;
+		for (int row = 0; row < 16; row++) {
+			value = ram.getMemory(address++);
+			turnedOff |= display.draw(xLoc, yLoc + row, value);
 			// Draw the left half of the sprite
-			value = ram.getMemory(address);
-			address.addToAddress(1);
-			System.out.println(Integer.toHexString(value));
-			turnedOff |= display.draw(xLoc + 8, yLoc + i, value);
+			value = ram.getMemory(address++);
+			turnedOff |= display.draw(xLoc + 8, yLoc + row, value);
 			// Draw the right half of the sprite
 		}
 		if (turnedOff) {
-			registers[0xF].setValue(1);
+			registers[0xF] = 1;
 		}
 	}
 
@@ -449,8 +529,8 @@ public class Computer implements Runnable {
 	 * @param x
 	 *            The register holding the value of the key
 	 */
-	private void opcode_EX9E(Register x) {
-		if (keyboard.getKeyPressed(x.getValue())) {
+	private void opcode_EX9E(int x) {
+		if (keyboard.getKeyPressed(registers[x])) {
 			programCounter += 2;
 		}
 	}
@@ -461,8 +541,8 @@ public class Computer implements Runnable {
 	 * @param x
 	 *            The register with the key value
 	 */
-	private void opcode_EXA1(Register x) {
-		if (!keyboard.getKeyPressed(x.getValue())) {
+	private void opcode_EXA1(int x) {
+		if (!keyboard.getKeyPressed(registers[x])) {
 			programCounter += 2;
 		}
 	}
@@ -473,19 +553,42 @@ public class Computer implements Runnable {
 	 * @param x
 	 *            The register, VX
 	 */
-	private void opcode_FX07(Register x) {
-		x.setValue(delay.getValue());
+	private void opcode_FX07(int x) {
+		registers[x] = delay.getValue() & 0xff;
 	}
 
 	/**
-	 * A key press is awaited, and then stored in VX.
+	 * A key press is awaited, and then stored in VX. Keys only arrive between
+	 * frames, so until one is pressed the instruction uses up the rest of the
+	 * frame, exactly as if it had run again for every instruction left in it.
 	 * 
 	 * @param x
 	 *            Register VX
 	 */
-	private void opcode_FX0A(Register x) {
-		int value = keyboard.waitForKeyPress();
-		x.setValue(value);
+	private void opcode_FX0A(int x) {
+		if (!waitingForKey) {
+			keyboard.clearKeyPress();
+			waitingForKey = true;
+			metrics.keyWaitStarted();
+		}
+		int key = keyboard.getKeyPress();
+		if (key == -1) {
+			programCounter -= 2;
+			int rest = instructionsPerFrame - 1 - frameCycle;
+			// Stop short of the next replayed key event or the cycle limit
+			long untilStop = nextStop() - cycleCount - 1;
+			if (rest > untilStop) {
+				rest = (int) untilStop;
+			}
+			if (rest > 0) {
+				cycleCount += rest;
+				frameCycle += rest;
+			}
+			return;
+		}
+		waitingForKey = false;
+		metrics.keyWaitFinished();
+		registers[x] = key & 0xff;
 	}
 
 	/**
@@ -494,8 +597,8 @@ public class Computer implements Runnable {
 	 * @param x
 	 *            The register VX
 	 */
-	private void opcode_FX15(Register x) {
-		delay.setTimer(x.getValue());
+	private void opcode_FX15(int x) {
+		delay.setTimer(registers[x]);
 	}
 
 	/**
@@ -504,8 +607,8 @@ public class Computer implements Runnable {
 	 * @param x
 	 *            The register VX
 	 */
-	private void opcode_FX18(Register x) {
-		sound.setTimer(x.getValue());
+	private void opcode_FX18(int x) {
+		sound.setTimer(registers[x]);
 	}
 
 	/**
@@ -514,9 +617,8 @@ public class Computer implements Runnable {
 	 * @param x
 	 *            The VX register
 	 */
-	private void opcode_FX1E(Register x) {
-		int value = (i.getValue() + x.getValue());
-		i.setValue(value);
+	private void opcode_FX1E(int x) {
+		i = (i + registers[x]) & 0xffff;
 	}
 
 	/**
@@ -526,9 +628,9 @@ public class Computer implements Runnable {
 	 * @param x
 	 *            VX
 	 */
-	private void opcode_FX29(Register x) {
-		int val = x.getValue() & 0xf; // If value isnt 0-f force it to be
-		i.setValue(val * 5); // 5 entries for the rows and an empty.
+	private void opcode_FX29(int x) {
+		int val = registers[x] & 0xf; // If value isnt 0-f force it to be
+		i = val * 5; // 5 entries for the rows and an empty.
 	}
 
 	/**
@@ -538,14 +640,12 @@ public class Computer implements Runnable {
 	 * @param x
 	 *            VX, sprite
 	 */
-	private void opcode_FX30(Register x) {
-		// TODO
-		int value = x.getValue() & 0xf;
+	private void opcode_FX30(int x) {
+		int value = registers[x] & 0xf;
 		value *= 10;
 		value += 0x50;
-		System.out.println(value + " fx30");
 
-		i.setValue(value);
+		i = value;
 	}
 
 	/**
@@ -555,17 +655,14 @@ public class Computer implements Runnable {
 	 * @param x
 	 *            Register VX
 	 */
-	private void opcode_FX33(Register x) {
-		Address addr = new Address(i.getValue());
-		int value = x.getValue();
+	private void opcode_FX33(int x) {
+		int value = registers[x];
 		int hundreds = (value / 100);
 		int tens = ((value - hundreds) / 10);
 		int ones = ((value - hundreds - tens));
-		ram.setMemory(addr, hundreds);
-		addr.addToAddress(1);
-		ram.setMemory(addr, tens);
-		addr.addToAddress(1);
-		ram.setMemory(addr, ones);
+		ram.setMemory(i, hundreds);
+		ram.setMemory(i + 1, tens);
+		ram.setMemory(i + 2, ones);
 	}
 
 	/**
@@ -574,16 +671,11 @@ public class Computer implements Runnable {
 	 * @param x
 	 *            VX
 	 */
-	private void opcode_FX55(Register x) {
+	private void opcode_FX55(int x) {
 		// Stores V0 to VX in memory starting at address I.
-		Address address = new Address(i.getValue());
-		int value;
-		for (int j = 0; j < registers.length && registers[j] != x; j++) {
-			value = registers[j].getValue();
-			ram.setMemory(address, value);
-			address.addToAddress((short) 0x1);
+		for (int j = 0; j <= x; j++) {
+			ram.setMemory(i + j, registers[j]);
 		}
-		ram.setMemory(address, x.getValue());
 	}
 
 	/**
@@ -592,282 +684,573 @@ public class Computer implements Runnable {
 	 * @param x
 	 *            The ending register
 	 */
-	private void opcode_FX65(Register x) {
-		Address address = new Address(i.getValue());
-		int value;
-		for (int j = 0; j < registers.length && registers[j] != x; j++) {
-			value = ram.getMemory(address);
-			registers[j].setValue(value);
-			address.addToAddress((short) 0x1);
+	private void opcode_FX65(int x) {
+		for (int j = 0; j <= x; j++) {
+			registers[j] = ram.getMemory(i + j);
 		}
-		x.setValue(ram.getMemory(address));
 	}
 
 	/**
-	 * Emulates one cpu cycle
+	 * Emulates one cpu cycle, and tells the display listeners about anything
+	 * it drew straight away so that single steps are shown
 	 */
 	public void emulationCycle() {
-		evaluateOpcode();
-		sound.updateTimer();
-		delay.updateTimer();
+		emulationCycle(decodeCache.get(programCounter));
+		display.endFrame();
+	}
+
+	/**
+	 * Emulates one cpu cycle using an instruction that has already been
+	 * decoded. Every instruction advances the virtual clock, and the timers
+	 * tick each time a frame's worth of instructions has run.
+	 * 
+	 * @param instruction
+	 *            The instruction at the program counter
+	 */
+	private void emulationCycle(Instruction instruction) {
+		if (cycleCount >= nextInputCycle) {
+			replay.apply(cycleCount, keyboard);
+			nextInputCycle = replay.getNextCycle();
+		}
+		int address = programCounter;
+		if (profiler == null) {
+			execute(instruction);
+		} else {
+			profile(instruction, address);
+		}
+		if (tracer != null) {
+			tracer.trace(cycleCount, address, instruction.getOpcode(), i, registers);
+		}
 		programCounter += 2;
+		cycleCount++;
+		if (++frameCycle >= instructionsPerFrame) {
+			endFrame();
+		}
 	}
 
 	/**
-	 * Gets the next opcode and evaluates it
+	 * Ends the frame once a frame's worth of instructions has run, ticking the
+	 * timers and handing the frame to the display
 	 */
-	private void evaluateOpcode() {
-		Address loc = new Address(programCounter);
-		int opcode = ram.getMemory(loc);
-		loc.addToAddress(1);
-		opcode = createOpcode(opcode, ram.getMemory(loc));
-		// System.out.println("Evaluating Opcode: 0x" +
-		// Integer.toHexString(opcode));
-		evaluateOpcode(opcode);
-		// System.out.println("Evaluated Opcode: 0x" +
-		// Integer.toHexString(opcode));
+	private void endFrame() {
+		frameCycle = 0;
+		frameCount++;
+		sound.tick();
+		delay.tick();
+		display.endFrame();
+		if (!keyEvents.isEmpty()) {
+			applyKeyEvents();
+		}
+		publishCounters();
 	}
 
 	/**
-	 * Executes opcodes
+	 * Hands the clock and cache counters to the metrics, which JMX reads from
+	 * other threads
+	 */
+	private void publishCounters() {
+		metrics.publish(cycleCount, frameCount, blockCache.getInvalidations());
+	}
+
+	/**
+	 * Executes an instruction and counts it in the profiler
 	 * 
-	 * @param opcode
-	 *            The opcode to evaluate
+	 * @param instruction
+	 *            The instruction at the program counter
+	 * @param address
+	 *            The program counter
 	 */
-	public void evaluateOpcode(int opcode) {
-		System.out.println("Evaluating " + Integer.toHexString(opcode));
-		opcode &= 0xffff;
-		Register x, y;
-		short value;
-		switch ((opcode & 0xf000) >> 12) {
-			case 0x0:
-				execute0NNNOpcodes(opcode);
-				break;
-			case 0x1:
-				opcode_1NNN(new Address((short) (opcode & 0x0FFF)));
-				break;
-			case 0x2:
-				opcode_2NNN(new Address((short) (opcode & 0x0FFF)));
-				break;
-			case 0x3:
-				x = getRegister((byte) ((opcode & 0x0f00) >> 8));
-				value = (short) (opcode & 0xff);
-				opcode_3XNN(x, value);
-				break;
-			case 0x4:
-				x = getRegister((byte) ((opcode & 0x0f00) >> 8));
-				value = (short) (opcode & 0xff);
-				opcode_4XNN(x, value);
-				break;
-			case 0x5:
-				x = getRegister((byte) ((opcode & 0x0f00) >> 8));
-				y = getRegister((byte) ((opcode & 0x00f0) >> 4));
-				opcode_5XY0(x, y);
-				break;
-			case 0x6:
-				int register = ((opcode & 0x0f00) >> 8);
-				x = getRegister(register);
-				value = (short) (opcode & 0xff);
-				opcode_6XNN(x, value);
-				break;
-			case 0x7:
-				x = getRegister((byte) ((opcode & 0x0f00) >> 8));
-				value = (short) (opcode & 0xff);
-				opcode_7XNN(x, value);
-				break;
-			case 0x8:
-				execute8XYNOpcodes(opcode);
-				break;
-			case 0x9:
-				x = getRegister((byte) ((opcode & 0x0f00) >> 8));
-				y = getRegister((byte) ((opcode & 0x00f0) >> 4));
-				opcode_9XY0(x, y);
-				break;
-			case 0xA:
-				value = (short) (opcode & 0xFFF);
-				opcode_ANNN(new Address(value));
-				break;
-			case 0xB:
-				value = (short) (opcode & 0xFFF);
-				opcode_BNNN(new Address(value));
-				break;
-			case 0xC:
-				x = getRegister((byte) ((opcode & 0x0f00) >> 8));
-				value = (short) (opcode & 0xFF);
-				opcode_CXNN(x, value);
-			case 0xD:
-				x = getRegister((byte) ((opcode & 0x0f00) >> 8));
-				y = getRegister((byte) ((opcode & 0x00f0) >> 4));
-				value = (short) (opcode & 0xf);
-				if (value != 0) {
-					opcode_DXYN(x, y, value);
-				} else {
-					opcode_DXY0(x, y);
+	private void profile(Instruction instruction, int address) {
+		Opcode type = instruction.getType();
+		if (Profiler.isTimed(type)) {
+			long start = System.nanoTime();
+			execute(instruction);
+			profiler.count(type, address, System.nanoTime() - start);
+		} else {
+			execute(instruction);
+			profiler.count(type, address);
+		}
+	}
+
+	/**
+	 * Applies the key presses and releases that have arrived from other
+	 * threads, recording them if input is being recorded. They are dropped
+	 * while input is being replayed.
+	 */
+	private void applyKeyEvents() {
+		Integer event;
+		while ((event = keyEvents.poll()) != null) {
+			if (replay != null) {
+				continue;
+			}
+			int key = event & 0xf;
+			boolean pressed = (event & 0x10) != 0;
+			keyboard.setKeyPressed(key, pressed);
+			if (recorder != null) {
+				try {
+					recorder.record(cycleCount, key, pressed);
+				} catch (IOException e) {
+					e.printStackTrace();
+					recorder = null;
 				}
+			}
+		}
+	}
+
+	/**
+	 * Starts writing every key press and release to a file. The file starts
+	 * with a snapshot so it can be replayed from exactly this point with
+	 * {@link #replay(InputReplay)}. The computer should be paused while
+	 * recording is started.
+	 * 
+	 * @param file
+	 *            The file to write
+	 * @throws IOException
+	 *             Thrown when the file cannot be written
+	 */
+	public void startRecording(File file) throws IOException {
+		stopRecording();
+		recorder = new InputRecorder(file, snapshot(), instructionsPerFrame, cycleCount);
+	}
+
+	/**
+	 * Stops recording input and closes the file
+	 */
+	public void stopRecording() {
+		if (recorder == null) {
+			return;
+		}
+		try {
+			recorder.close(cycleCount);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		recorder = null;
+	}
+
+	/**
+	 * Checks if input is being recorded
+	 * 
+	 * @return Whether key presses are written to a file
+	 */
+	public boolean isRecording() {
+		return recorder != null;
+	}
+
+	/**
+	 * Puts the computer into the state a recording started from and plays
+	 * back its key presses on the same cycles they were recorded on. Key
+	 * presses from other threads are ignored until the computer is stopped.
+	 * The computer should be paused while this is done.
+	 * 
+	 * @param replay
+	 *            The recording to play back
+	 */
+	public void replay(InputReplay replay) {
+		stopRecording();
+		restore(replay.getSnapshot());
+		instructionsPerFrame = replay.getInstructionsPerFrame();
+		keyEvents.clear();
+		if (rewind != null) {
+			// Frames from before the recording started cannot be played back
+			rewind.clear();
+		}
+		replay.reset();
+		this.replay = replay;
+		nextInputCycle = replay.getNextCycle();
+	}
+
+	/**
+	 * Runs the block at the program counter if it is hot, otherwise emulates a
+	 * single cpu cycle. A block stops early when the frame ends part way
+	 * through it, so a frame never runs into the next one.
+	 * 
+	 * @return The amount of instructions that were executed
+	 */
+	public int executeBlock() {
+		if (compiled != null && tracer == null && profiler == null) {
+			int executed = runCompiled();
+			if (executed > 0) {
+				return executed;
+			}
+		}
+		Block block = blockCache.get(programCounter);
+		if (block == null) {
+			emulationCycle();
+			return 1;
+		}
+		Instruction[] instructions = block.getInstructions();
+		Fusion[] fusions = block.getFusions();
+		boolean fuse = tracer == null && profiler == null;
+		int executed = 0;
+		int j = 0;
+		while (j < instructions.length) {
+			Fusion fusion = fusions[j];
+			if (fuse && fusion != null && fits(fusion.getLength())) {
+				executed += executeFused(fusion, instructions, j);
+				j += fusion.getLength();
+			} else {
+				emulationCycle(instructions[j++]);
+				executed++;
+				if (frameCycle == 0) {
+					// The frame ended, the rest of the block belongs to the next one
+					break;
+				}
+			}
+			if (!block.isValid()) {
+				// The block wrote over itself, the rest has to be decoded again
 				break;
-			case 0xE:
-				x = getRegister((byte) ((opcode & 0x0f00) >> 8));
-				switch (opcode & 0xff) {
-					case 0x9E:
-						opcode_EX9E(x);
-						break;
-					case 0xA1:
-						opcode_EXA1(x);
-						break;
-					default:
-						System.out.println("UNKNOWN OPCODE: 0x" + Integer.toHexString(opcode) + " Found at Program location: "
-								+ Integer.toHexString(programCounter - startPlace));
+			}
+		}
+		return executed;
+	}
+
+	/**
+	 * Gets the first cycle that instructions may not be run past without
+	 * looking at the clock
+	 * 
+	 * @return The cycle of the next replayed key event or the cycle limit,
+	 *         whichever comes first
+	 */
+	private long nextStop() {
+		return Math.min(nextInputCycle, cycleLimit);
+	}
+
+	/**
+	 * Checks if instructions can be run without looking at the clock until
+	 * the last one, because the frame does not end, no replayed key event is
+	 * due and the cycle limit is not reached before then
+	 * 
+	 * @param count
+	 *            The amount of instructions
+	 * @return Whether they fit in what is left of the frame
+	 */
+	private boolean fits(int count) {
+		return frameCycle + count < instructionsPerFrame && cycleCount + count <= nextStop();
+	}
+
+	/**
+	 * Runs fused instructions as a single step. Only called when they fit in
+	 * the frame, see {@link #fits(int)}, so the timers and keys cannot change
+	 * while they run. Loops that jump back to themselves keep going until
+	 * they end or the next one would not fit, so a delay timer wait skips
+	 * straight to the frame where the timer next ticks.
+	 * 
+	 * @param fusion
+	 *            The fusion
+	 * @param instructions
+	 *            The instructions of the block
+	 * @param j
+	 *            The index of the first fused instruction
+	 * @return The amount of instructions that were executed
+	 */
+	private int executeFused(Fusion fusion, Instruction[] instructions, int j) {
+		Instruction first = instructions[j];
+		Instruction second = instructions[j + 1];
+		int start = programCounter;
+		int executed = fusion.getLength();
+		switch (fusion) {
+			case SET_PAIR:
+				registers[first.getX()] = first.getNN();
+				registers[second.getX()] = second.getNN();
+				programCounter += 4;
+				break;
+			case DRAW:
+				i = first.getNNN();
+				opcode_DXYN(second.getX(), second.getY(), second.getN());
+				programCounter += 4;
+				break;
+			case DELAY_WAIT:
+				int value = delay.getValue() & 0xff;
+				registers[first.getX()] = value;
+				if (value == 0) {
+					// The skip passes over the jump, which never runs
+					programCounter += 6;
+					executed = 2;
+					break;
 				}
+				// The timer holds its value until the frame ends
+				long loops = (instructionsPerFrame - 1 - frameCycle) / 3;
+				loops = Math.min(loops, (nextStop() - cycleCount) / 3);
+				executed = (int) loops * 3;
 				break;
-			case 0xF:
-				executeFXNNOpcodes(opcode);
+			case COUNTER:
+				int x = first.getX();
+				int target = decodeCache.get(start + 4).getNNN();
+				executed = 0;
+				do {
+					registers[x] = (registers[x] + first.getNN()) & 0xff;
+					if (registers[x] == second.getNN()) {
+						programCounter = start + 6;
+						executed += 2;
+						break;
+					}
+					programCounter = target;
+					executed += 3;
+				} while (target == start && fits(executed + 3));
 				break;
-			default:
-				System.out.println("UNKNOWN OPCODE: 0x" + Integer.toHexString(opcode) + " Found at Program location: "
-						+ Integer.toHexString(programCounter - startPlace));
 		}
+		cycleCount += executed;
+		frameCycle += executed;
+		return executed;
 	}
 
 	/**
-	 * Executes the opcodes that fit the format 0NNN
+	 * Runs compiled blocks from the program counter for as long as they fit
+	 * in the frame. The clock is advanced once for everything they ran, so
+	 * they are never given more cycles than are left before the frame ends,
+	 * the next replayed key event is due or the cycle limit is reached, and
+	 * the frame is ended here when they run up to its end.
+	 * 
+	 * @return The amount of instructions that were executed, or 0 if the
+	 *         block at the program counter has to be interpreted
+	 */
+	private int runCompiled() {
+		long cycles = Math.min(instructionsPerFrame - frameCycle, nextStop() - cycleCount);
+		if (cycles <= 0) {
+			return 0;
+		}
+		programCounter = compiled.run(programCounter, (int) cycles);
+		int executed = (int) cycles - compiled.getLeft();
+		cycleCount += executed;
+		frameCycle += executed;
+		if (frameCycle >= instructionsPerFrame) {
+			endFrame();
+		}
+		return executed;
+	}
+
+	/**
+	 * Executes an instruction for compiled code, exactly as the interpreter
+	 * would at an address but without advancing the program counter or clock
+	 * 
+	 * @param address
+	 *            The address of the instruction
+	 * @param instruction
+	 *            The instruction
+	 */
+	void executeAt(int address, Instruction instruction) {
+		programCounter = address;
+		execute(instruction);
+	}
+
+	/**
+	 * Gets the program counter
+	 * 
+	 * @return The address of the current instruction
+	 */
+	int getProgramCounter() {
+		return programCounter;
+	}
+
+	/**
+	 * Gets the I register
+	 * 
+	 * @return I
+	 */
+	int getI() {
+		return i;
+	}
+
+	/**
+	 * Sets the I register
+	 * 
+	 * @param i
+	 *            The new value of I
+	 */
+	void setI(int i) {
+		this.i = i;
+	}
+
+	/**
+	 * Sets the code that the loaded rom was compiled to ahead of time. Blocks
+	 * are run compiled while memory still holds the rom they were compiled
+	 * from and neither tracing nor profiling is on. The computer should be
+	 * paused while this is done.
+	 * 
+	 * @param compiled
+	 *            The compiled code, which may not be used by another
+	 *            computer, or null to only interpret
+	 */
+	public void setCompiledCode(CompiledCode compiled) {
+		if (this.compiled != null) {
+			this.compiled.detach();
+		}
+		this.compiled = compiled;
+		if (compiled != null) {
+			compiled.attach(this, ram, registers);
+		}
+	}
+
+	/**
+	 * Gets the code that the loaded rom was compiled to ahead of time
+	 * 
+	 * @return The compiled code, or null when only interpreting
+	 */
+	public CompiledCode getCompiledCode() {
+		return compiled;
+	}
+
+	/**
+	 * Executes opcodes
 	 * 
 	 * @param opcode
 	 *            The opcode to evaluate
 	 */
-	private void execute0NNNOpcodes(int opcode) {
-		switch (opcode & 0xFF) {
-			case 0x00E0:
+	public void evaluateOpcode(int opcode) {
+		execute(new Instruction(opcode));
+	}
+
+	/**
+	 * Executes an instruction that has already been decoded
+	 * 
+	 * @param instruction
+	 *            The instruction to execute
+	 */
+	private void execute(Instruction instruction) {
+		switch (instruction.getType()) {
+			case OPCODE_00CN:
+				opcode_00CN(instruction.getN());
+				break;
+			case OPCODE_00E0:
 				opcode_00E0();
 				break;
-			case 0x00EE:
+			case OPCODE_00EE:
 				opcode_00EE();
 				break;
-			case 0x00FB:
+			case OPCODE_00FB:
 				opcode_00FB();
 				break;
-			case 0x00FC:
+			case OPCODE_00FC:
 				opcode_00FC();
 				break;
-			case 0x00FE:
+			case OPCODE_00FE:
 				opcode_00FE();
 				break;
-			case 0x00FF:
+			case OPCODE_00FF:
 				opcode_00FF();
 				break;
-			default:
-				if ((opcode & 0xF0) == 0xC0) {
-					opcode_00CN(opcode & 0xF);
-				} else {
-					System.out.println("UNKNOWN OPCODE: 0x" + Integer.toHexString(opcode) + " Found at Program location: "
-							+ Integer.toHexString(programCounter - startPlace));
-				}
-		}
-	}
-
-	/**
-	 * Executes the opcodes that fit the format DXYN
-	 * 
-	 * @param opcode
-	 *            The opcode to evaluate
-	 */
-	private void execute8XYNOpcodes(int opcode) {
-		Register x = getRegister((byte) ((opcode & 0x0f00) >> 8));
-		Register y = getRegister((byte) ((opcode & 0x00f0) >> 4));
-		switch (opcode & 0xF) {
-			case 0x0:
-				opcode_8XY0(x, y);
+			case OPCODE_1NNN:
+				opcode_1NNN(instruction.getNNN());
 				break;
-			case 0x1:
-				opcode_8XY1(x, y);
+			case OPCODE_2NNN:
+				opcode_2NNN(instruction.getNNN());
 				break;
-			case 0x2:
-				opcode_8XY2(x, y);
+			case OPCODE_3XNN:
+				opcode_3XNN(instruction.getX(), instruction.getNN());
 				break;
-			case 0x3:
-				opcode_8XY3(x, y);
+			case OPCODE_4XNN:
+				opcode_4XNN(instruction.getX(), instruction.getNN());
 				break;
-			case 0x4:
-				opcode_8XY4(x, y);
+			case OPCODE_5XY0:
+				opcode_5XY0(instruction.getX(), instruction.getY());
 				break;
-			case 0x5:
-				opcode_8XY5(x, y);
+			case OPCODE_6XNN:
+				opcode_6XNN(instruction.getX(), instruction.getNN());
 				break;
-			case 0x6:
-				opcode_8XY6(x);
+			case OPCODE_7XNN:
+				opcode_7XNN(instruction.getX(), instruction.getNN());
 				break;
-			case 0x7:
-				opcode_8XY7(x, y);
+			case OPCODE_8XY0:
+				opcode_8XY0(instruction.getX(), instruction.getY());
 				break;
-			case 0xE:
-				opcode_8XYE(x);
+			case OPCODE_8XY1:
+				opcode_8XY1(instruction.getX(), instruction.getY());
 				break;
-			default:
-				System.out.println("UNKNOWN OPCODE: 0x" + Integer.toHexString(opcode) + " Found at Program location: "
-						+ Integer.toHexString(programCounter - startPlace));
-		}
-	}
-
-	/**
-	 * Executes the opcodes that fit the format FXNN
-	 * 
-	 * @param opcode
-	 *            The opcode to evaluate
-	 */
-	private void executeFXNNOpcodes(int opcode) {
-		Register x = getRegister((byte) ((opcode & 0x0f00) >> 8));
-		switch (opcode & 0xFF) {
-			case 0x07:
-				opcode_FX07(x);
+			case OPCODE_8XY2:
+				opcode_8XY2(instruction.getX(), instruction.getY());
+				break;
+			case OPCODE_8XY3:
+				opcode_8XY3(instruction.getX(), instruction.getY());
+				break;
+			case OPCODE_8XY4:
+				opcode_8XY4(instruction.getX(), instruction.getY());
+				break;
+			case OPCODE_8XY5:
+				opcode_8XY5(instruction.getX(), instruction.getY());
+				break;
+			case OPCODE_8XY6:
+				opcode_8XY6(instruction.getX());
+				break;
+			case OPCODE_8XY7:
+				opcode_8XY7(instruction.getX(), instruction.getY());
+				break;
+			case OPCODE_8XYE:
+				opcode_8XYE(instruction.getX());
 				break;
-			case 0x0A:
-				opcode_FX0A(x);
+			case OPCODE_9XY0:
+				opcode_9XY0(instruction.getX(), instruction.getY());
 				break;
-			case 0x15:
-				opcode_FX15(x);
+			case OPCODE_ANNN:
+				opcode_ANNN(instruction.getNNN());
 				break;
-			case 0x18:
-				opcode_FX18(x);
+			case OPCODE_BNNN:
+				opcode_BNNN(instruction.getNNN());
 				break;
-			case 0x1E:
-				opcode_FX1E(x);
+			case OPCODE_CXNN:
+				opcode_CXNN(instruction.getX(), instruction.getNN());
 				break;
-			case 0x29:
-				opcode_FX29(x);
+			case OPCODE_DXYN:
+				opcode_DXYN(instruction.getX(), instruction.getY(), instruction.getN());
 				break;
-			case 0x30:
-				opcode_FX30(x);
+			case OPCODE_DXY0:
+				opcode_DXY0(instruction.getX(), instruction.getY());
 				break;
-			case 0x33:
-				opcode_FX33(x);
+			case OPCODE_EX9E:
+				opcode_EX9E(instruction.getX());
 				break;
-			case 0x55:
-				opcode_FX55(x);
+			case OPCODE_EXA1:
+				opcode_EXA1(instruction.getX());
 				break;
-			case 0x65:
-				opcode_FX65(x);
+			case OPCODE_FX07:
+				opcode_FX07(instruction.getX());
+				break;
+			case OPCODE_FX0A:
+				opcode_FX0A(instruction.getX());
+				break;
+			case OPCODE_FX15:
+				opcode_FX15(instruction.getX());
+				break;
+			case OPCODE_FX18:
+				opcode_FX18(instruction.getX());
+				break;
+			case OPCODE_FX1E:
+				opcode_FX1E(instruction.getX());
+				break;
+			case OPCODE_FX29:
+				opcode_FX29(instruction.getX());
+				break;
+			case OPCODE_FX30:
+				opcode_FX30(instruction.getX());
+				break;
+			case OPCODE_FX33:
+				opcode_FX33(instruction.getX());
+				break;
+			case OPCODE_FX55:
+				opcode_FX55(instruction.getX());
+				break;
+			case OPCODE_FX65:
+				opcode_FX65(instruction.getX());
 				break;
 			default:
-				System.out.println("UNKNOWN OPCODE: 0x" + Integer.toHexString(opcode) + " Found at Program location: "
-						+ Integer.toHexString(programCounter - startPlace));
-
+				reportUnknown(instruction);
 		}
 	}
 
 	/**
-	 * Opens a JFileChooser so that you can choose the rom file graphically
+	 * Prints an unknown opcode the first time it runs at an address. A rom
+	 * that runs into data would otherwise print on every cycle. Every
+	 * execution still shows up in the trace when a tracer is set.
+	 * 
+	 * @param instruction
+	 *            The unknown instruction
 	 */
-	public void loadRom() {
-		JFileChooser chooser = new JFileChooser();
-		chooser.setCurrentDirectory(new File("."));
-		int returnVal = chooser.showOpenDialog(null);
-
-		if (returnVal == JFileChooser.APPROVE_OPTION) {
-			try {
-				Rom rom = new Rom(chooser.getSelectedFile().getAbsolutePath());
-				loadRom(rom);
-			} catch (DataFormatException | IOException e) {
-				e.printStackTrace();
-			}
+	private void reportUnknown(Instruction instruction) {
+		int address = programCounter & (unknownReported.length - 1);
+		if (!unknownReported[address]) {
+			unknownReported[address] = true;
+			System.out.println("UNKNOWN OPCODE: " + instruction + " Found at Program location: "
+					+ Integer.toHexString(programCounter - startPlace));
 		}
 	}
 
@@ -876,15 +1259,19 @@ public class Computer implements Runnable {
 	 * 
 	 * @param rom
 	 *            The rom to load
+	 * @throws IllegalArgumentException
+	 *             Thrown when the rom does not fit in memory above 0x200
 	 */
 	public void loadRom(Rom rom) {
+		ByteBuffer data = rom.getData();
+		if (data.remaining() > ram.getSize() - 0x200) {
+			throw new IllegalArgumentException("Rom is " + data.remaining() + " bytes, but only "
+					+ (ram.getSize() - 0x200) + " fit in memory");
+		}
 		stop();
-		int[] data = rom.getRom();
-		romLength = data.length;
-		Address address = new Address(0x200);
-		for (int i = 0; i < data.length; i++) {
-			ram.setMemory(address, data[i]);
-			address.addToAddress(1);
+		romLength = data.remaining();
+		for (int i = 0; i < romLength; i++) {
+			ram.setMemory(0x200 + i, data.get(i) & 0xff);
 		}
 		program = new Thread(this);
 	}
@@ -913,8 +1300,10 @@ public class Computer implements Runnable {
 		}
 		if (program.isAlive()) {
 			keepRunning = false;
+			// Wake it if it is parked waiting for the next frame
+			LockSupport.unpark(program);
 			try {
-				program.join(10);
+				program.join(100);
 			} catch (InterruptedException e) {
 				e.printStackTrace();
 			}
@@ -922,6 +1311,15 @@ public class Computer implements Runnable {
 		keepRunning = true;
 	}
 
+	/**
+	 * Checks if the rom is running on its own thread
+	 * 
+	 * @return Whether the computer is running
+	 */
+	public boolean isRunning() {
+		return program != null && program.isAlive();
+	}
+
 	/**
 	 * Resumes running from the paused state
 	 */
@@ -943,6 +1341,8 @@ public class Computer implements Runnable {
 
 		if (program != null) {
 			keepRunning = false;
+			// Wake it if it is parked waiting for the next frame or a key
+			LockSupport.unpark(program);
 			try {
 				program.join(100);
 			} catch (InterruptedException e) {
@@ -953,19 +1353,448 @@ public class Computer implements Runnable {
 	}
 
 	/**
-	 * Runs the loaded rom at 1000 commands/second
+	 * Emulates until the virtual clock reaches the end of the current 60 Hz
+	 * frame.
+	 */
+	public void emulateFrame() {
+		long frame = frameCount;
+		while (frameCount == frame) {
+			executeBlock();
+		}
+		if (rewind != null) {
+			rewind.record();
+		}
+	}
+
+	/**
+	 * Runs the loaded rom one frame at a time, parking between frames until
+	 * the next frame is due. In turbo mode frames are run back to back.
 	 */
 	@Override
 	public void run() {
-		System.out.println("Rom Length: " + Integer.toHexString(romLength));
+		long deadline = System.nanoTime();
 		while (keepRunning) {
-			time = System.nanoTime();
-			emulationCycle();
-			long end = time + 1000000000L / 1000L;
-			while (System.nanoTime() < end)
-				// while (System.currentTimeMillis() - time < 1)
-				;
+			long start = System.nanoTime();
+			metrics.frameStarted(start - deadline);
+			emulateFrame();
+			long end = System.nanoTime();
+			metrics.frameFinished(start, end);
+			if (turbo) {
+				deadline = end;
+				continue;
+			}
+			deadline += FRAME_NANOS;
+			long remaining = deadline - end;
+			if (remaining > 0 && waitingForKey) {
+				if (awaitKey(remaining)) {
+					// Start the next frame now so FX0A sees the key straight away
+					deadline = System.nanoTime();
+				}
+			} else if (remaining > 0) {
+				LockSupport.parkNanos(remaining);
+			} else {
+				metrics.timerUnderrun();
+				if (remaining < -FRAME_NANOS) {
+					// Too far behind to catch up, start pacing again from now
+					deadline = end;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sets the tracer that every executed instruction is written to. The
+	 * computer should be paused while this is done.
+	 * 
+	 * @param tracer
+	 *            The tracer, or null to stop tracing
+	 */
+	public void setTracer(Tracer tracer) {
+		this.tracer = tracer;
+	}
+
+	/**
+	 * Gets the tracer that every executed instruction is written to
+	 * 
+	 * @return The tracer, or null when not tracing
+	 */
+	public Tracer getTracer() {
+		return tracer;
+	}
+
+	/**
+	 * Turns counting of executed instructions on or off. The computer should
+	 * be paused while this is done.
+	 * 
+	 * @param enabled
+	 *            Whether to profile
+	 */
+	public void setProfiling(boolean enabled) {
+		if (!enabled) {
+			if (profiler != null) {
+				profiler.stopDump();
+			}
+			profiler = null;
+		} else if (profiler == null) {
+			profiler = new Profiler(ram.getSize());
+		}
+	}
+
+	/**
+	 * Gets the profiler counting executed instructions
+	 * 
+	 * @return The profiler, or null when not profiling
+	 */
+	public Profiler getProfiler() {
+		return profiler;
+	}
+
+	/**
+	 * Gets the number that tells this computer apart from the others in the
+	 * same JVM
+	 * 
+	 * @return The id
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * Gets the frame pacing and key wait metrics of the computer
+	 * 
+	 * @return The metrics
+	 */
+	public ComputerMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Registers the metrics of the computer with the platform MBean server as
+	 * com.tycoon177.chip8:type=Computer,id=<i>id</i>
+	 */
+	public void publishMetrics() {
+		if (metricsName != null) {
+			return;
 		}
+		try {
+			ObjectName name = new ObjectName("com.tycoon177.chip8:type=Computer,id=" + id);
+			ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, name);
+			metricsName = name;
+		} catch (JMException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Removes the metrics of the computer from the platform MBean server
+	 */
+	public void unpublishMetrics() {
+		if (metricsName == null) {
+			return;
+		}
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(metricsName);
+		} catch (JMException e) {
+			e.printStackTrace();
+		}
+		metricsName = null;
+	}
+
+	/**
+	 * Sets how far back the computer can be stepped. Every frame run by
+	 * {@link #emulateFrame()} is recorded while rewind is on.
+	 * 
+	 * @param seconds
+	 *            The seconds of frames to keep, or 0 to turn rewind off
+	 */
+	public void setRewindSeconds(int seconds) {
+		if (seconds < 0) {
+			throw new IllegalArgumentException("Rewind seconds cannot be negative");
+		}
+		if (seconds == 0) {
+			rewind = null;
+		} else {
+			rewind = new Rewind(this, ram, display, seconds * 60, seconds * REWIND_BYTES_PER_SECOND);
+		}
+	}
+
+	/**
+	 * Gets the rewind buffer
+	 * 
+	 * @return The rewind buffer, or null when rewind is off
+	 */
+	public Rewind getRewind() {
+		return rewind;
+	}
+
+	/**
+	 * Steps the computer back one frame. The computer should be paused first.
+	 * Input recording stops, as the recording would no longer match, and a
+	 * replay goes back to the key events of the frame stepped back to.
+	 * 
+	 * @return Whether there was a frame to step back to
+	 */
+	public boolean stepBack() {
+		if (rewind == null) {
+			return false;
+		}
+		stopRecording();
+		if (!rewind.stepBack()) {
+			return false;
+		}
+		if (replay != null) {
+			// Key events after the frame stepped back to have to be played again
+			replay.seek(cycleCount);
+			nextInputCycle = replay.getNextCycle();
+		}
+		return true;
+	}
+
+	/**
+	 * Parks between frames while FX0A is waiting for a key, waking up as soon
+	 * as a key event arrives. Events that arrived are applied here, which is
+	 * the same point between frames where they would otherwise be applied.
+	 * 
+	 * @param nanos
+	 *            The longest time to wait
+	 * @return Whether a key event arrived
+	 */
+	private boolean awaitKey(long nanos) {
+		keyWaiter = Thread.currentThread();
+		if (keyEvents.isEmpty()) {
+			LockSupport.parkNanos(nanos);
+		}
+		keyWaiter = null;
+		if (keyEvents.isEmpty()) {
+			return false;
+		}
+		applyKeyEvents();
+		return true;
+	}
+
+	/**
+	 * Sets how many instructions are run in each 60 Hz frame
+	 * 
+	 * @param instructionsPerFrame
+	 *            The instructions per frame, between
+	 *            {@link #MIN_INSTRUCTIONS_PER_FRAME} and
+	 *            {@link #MAX_INSTRUCTIONS_PER_FRAME}
+	 */
+	public void setInstructionsPerFrame(int instructionsPerFrame) {
+		if (instructionsPerFrame < MIN_INSTRUCTIONS_PER_FRAME || instructionsPerFrame > MAX_INSTRUCTIONS_PER_FRAME) {
+			throw new IllegalArgumentException("Instructions per frame must be between " + MIN_INSTRUCTIONS_PER_FRAME
+					+ " and " + MAX_INSTRUCTIONS_PER_FRAME);
+		}
+		this.instructionsPerFrame = instructionsPerFrame;
+	}
+
+	/**
+	 * Sets a cycle that the computer never skips ahead past. Key waits, fused
+	 * loops and compiled code normally use up the rest of a frame at once,
+	 * so this is needed to stop on an exact cycle. Blocks can still run past
+	 * it, so the last instructions before it should be run one at a time
+	 * with {@link #emulationCycle()}.
+	 * 
+	 * @param cycleLimit
+	 *            The cycle to stop at, or Long.MAX_VALUE for no limit
+	 */
+	public void setCycleLimit(long cycleLimit) {
+		this.cycleLimit = cycleLimit;
+	}
+
+	/**
+	 * Gets the number of instructions executed since the last reset. This is
+	 * the virtual clock of the computer.
+	 * 
+	 * @return The instruction count
+	 */
+	public long getCycleCount() {
+		return cycleCount;
+	}
+
+	/**
+	 * Gets the number of 60 Hz frames the virtual clock has completed since
+	 * the last reset
+	 * 
+	 * @return The frame count
+	 */
+	public long getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * Gets how many instructions are run in each 60 Hz frame
+	 * 
+	 * @return The instructions per frame
+	 */
+	public int getInstructionsPerFrame() {
+		return instructionsPerFrame;
+	}
+
+	/**
+	 * Turns turbo mode on or off. In turbo mode frames are not paced to 60 Hz
+	 * and run as fast as the host allows.
+	 * 
+	 * @param turbo
+	 *            Whether to run unthrottled
+	 */
+	public void setTurbo(boolean turbo) {
+		this.turbo = turbo;
+	}
+
+	/**
+	 * Checks if turbo mode is on
+	 * 
+	 * @return Whether frames are run unthrottled
+	 */
+	public boolean isTurbo() {
+		return turbo;
+	}
+
+	/**
+	 * Gets the next random byte for CXNN
+	 * 
+	 * @return A random number from 0 to 255
+	 */
+	private int nextRandomByte() {
+		randomState ^= randomState << 13;
+		randomState ^= randomState >>> 7;
+		randomState ^= randomState << 17;
+		return (int) (randomState >>> 56);
+	}
+
+	/**
+	 * Seeds the random numbers used by CXNN, so that runs can be repeated
+	 * 
+	 * @param seed
+	 *            The seed
+	 */
+	public void setRandomSeed(long seed) {
+		// xorshift can never leave a state of 0
+		randomState = seed == 0 ? 0x9E3779B97F4A7C15L : seed;
+	}
+
+	/**
+	 * Captures the whole state of the computer in a compact binary blob. This
+	 * covers memory, registers, I, the program counter, the return stack, both
+	 * timers, the virtual clock, the random numbers, the screen and the keys.
+	 * The computer should be paused while this is taken.
+	 * 
+	 * @return The snapshot
+	 */
+	public byte[] snapshot() {
+		ByteBuffer buffer = ByteBuffer.allocate(8 + STATE_SIZE + display.getScreen().length * 8 + ram.getSize());
+		buffer.putInt(SNAPSHOT_MAGIC);
+		saveState(buffer);
+		display.save(buffer);
+		ram.save(buffer);
+		return Arrays.copyOf(buffer.array(), buffer.position());
+	}
+
+	/**
+	 * Puts the computer back into the state captured by {@link #snapshot()}.
+	 * The computer should be paused while this is done.
+	 * 
+	 * @param snapshot
+	 *            The snapshot to restore
+	 */
+	public void restore(byte[] snapshot) {
+		ByteBuffer buffer = ByteBuffer.wrap(snapshot);
+		if (snapshot.length < 4 || buffer.getInt() != SNAPSHOT_MAGIC) {
+			throw new IllegalArgumentException("Not a snapshot of this computer");
+		}
+		loadState(buffer);
+		display.load(buffer);
+		ram.load(buffer);
+	}
+
+	/**
+	 * Creates a copy of this computer in the same state. The copy shares the
+	 * pages of memory with this computer until one of them writes to a page,
+	 * so forking does not copy memory. The computer should be paused while it
+	 * is forked.
+	 * 
+	 * @return The copy
+	 */
+	public Computer fork() {
+		Computer child = new Computer(ram.fork());
+		ByteBuffer buffer = ByteBuffer.allocate(4 + STATE_SIZE + display.getScreen().length * 8);
+		saveState(buffer);
+		display.save(buffer);
+		buffer.flip();
+		child.loadState(buffer);
+		child.display.load(buffer);
+		child.romLength = romLength;
+		child.startPlace = startPlace;
+		child.instructionsPerFrame = instructionsPerFrame;
+		return child;
+	}
+
+	/**
+	 * Writes the cpu, timer, clock and key state into a buffer. This is
+	 * everything but memory and the screen, and is always
+	 * {@link #STATE_SIZE} bytes.
+	 * 
+	 * @param buffer
+	 *            The buffer to write to
+	 */
+	void saveState(ByteBuffer buffer) {
+		for (int register : registers) {
+			buffer.put((byte) register);
+		}
+		buffer.putShort((short) i);
+		buffer.putShort((short) programCounter);
+		buffer.put((byte) stackPointer);
+		for (int address : returnStack) {
+			buffer.putShort((short) address);
+		}
+		buffer.put((byte) delay.getValue());
+		buffer.put((byte) sound.getValue());
+		buffer.putLong(cycleCount);
+		buffer.putLong(frameCount);
+		buffer.putShort((short) frameCycle);
+		buffer.putLong(randomState);
+		buffer.putShort((short) keyboard.getKeyState());
+		buffer.put((byte) (waitingForKey ? 1 : 0));
+		buffer.put((byte) keyboard.getKeyPress());
+	}
+
+	/**
+	 * Reads the cpu, timer, clock and key state from a buffer written by
+	 * {@link #saveState(ByteBuffer)}
+	 * 
+	 * @param buffer
+	 *            The buffer to read from
+	 */
+	void loadState(ByteBuffer buffer) {
+		for (int j = 0; j < registers.length; j++) {
+			registers[j] = buffer.get() & 0xff;
+		}
+		i = buffer.getShort() & 0xffff;
+		programCounter = buffer.getShort() & 0xffff;
+		stackPointer = buffer.get();
+		for (int j = 0; j < returnStack.length; j++) {
+			returnStack[j] = buffer.getShort() & 0xffff;
+		}
+		delay.setTimer(buffer.get() & 0xff);
+		sound.setTimer(buffer.get() & 0xff);
+		cycleCount = buffer.getLong();
+		frameCount = buffer.getLong();
+		frameCycle = buffer.getShort();
+		randomState = buffer.getLong();
+		keyboard.setKeyState(buffer.getShort() & 0xffff);
+		waitingForKey = buffer.get() != 0;
+		keyboard.setKeyPress(buffer.get());
+		publishCounters();
+	}
+
+	/**
+	 * Gets the memory of the computer
+	 * 
+	 * @return The memory
+	 */
+	public Memory getMemory() {
+		return ram;
 	}
 
 	/**
@@ -978,19 +1807,14 @@ public class Computer implements Runnable {
 	}
 
 	/**
-	 * Creates a 2 byte opcode
+	 * Gets the input that key presses from other threads, such as the user
+	 * interface, should be sent to. They are applied at the end of the frame
+	 * they arrive in.
 	 * 
-	 * @param msb
-	 *            The most significant byte.
-	 * @param lsb
-	 *            The least significant byte
-	 * @return The opcode
+	 * @return The key input
 	 */
-	private int createOpcode(int msb, int lsb) {
-		int opcode = msb;
-		opcode <<= 8;
-		opcode |= lsb;
-		return opcode;
+	public KeyInput getKeyInput() {
+		return keyInput;
 	}
 
 	/**
@@ -1003,13 +1827,13 @@ public class Computer implements Runnable {
 	}
 
 	/**
-	 * Gets the register by number
+	 * Gets the value of a register by number
 	 * 
 	 * @param j
 	 *            The index of the register
-	 * @return The register at index j
+	 * @return The value in register Vj
 	 */
-	public Register getRegister(int j) {
+	public int getRegister(int j) {
 		return registers[j];
 	}
 
@@ -0,0 +1,207 @@
+package com.tycoon177.chip8.system;
+
+/**
+ * Collects the frame pacing and key wait metrics of a computer. Everything is
+ * written by the emulation thread once a frame and read by JMX from any
+ * thread. The counters of the computer itself are plain fields that only the
+ * emulation thread may read, so copies of them are published here at the end
+ * of every frame.
+ * 
+ * @author Benjamin McHone
+ *
+ */
+public class ComputerMetrics implements ComputerMetricsMBean {
+	// The shortest time that rates are measured over
+	private static final long RATE_WINDOW_NANOS = 1000000000L;
+	private Computer computer;
+	private volatile long meanJitter;
+	private volatile long maxJitter;
+	private volatile long timerUnderruns;
+	private volatile long longFrames;
+	private volatile long keyWaits;
+	private volatile long keyWaitNanos;
+	private volatile long instructions;
+	private volatile long frames;
+	private volatile long blockInvalidations;
+	private long keyWaitStart;
+	// The last sample that rates were measured from
+	private long sampleTime;
+	private long sampleInstructions;
+	private long sampleFrames;
+	private double instructionsPerSecond;
+	private double framesPerSecond;
+
+	/**
+	 * Creates the metrics of a computer
+	 * 
+	 * @param computer
+	 *            The computer
+	 */
+	ComputerMetrics(Computer computer) {
+		this.computer = computer;
+		sampleTime = System.nanoTime();
+	}
+
+	/**
+	 * Publishes the counters of the computer. Called by the emulation thread
+	 * at the end of every frame and whenever the clock is reset or restored.
+	 * 
+	 * @param instructions
+	 *            The cycle count
+	 * @param frames
+	 *            The frame count
+	 * @param blockInvalidations
+	 *            The blocks thrown away by the block cache
+	 */
+	void publish(long instructions, long frames, long blockInvalidations) {
+		this.instructions = instructions;
+		this.frames = frames;
+		this.blockInvalidations = blockInvalidations;
+	}
+
+	/**
+	 * Records how late a frame started
+	 * 
+	 * @param nanos
+	 *            The time between when the frame was due and when it started
+	 */
+	void frameStarted(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		// Moving average over roughly the last 16 frames
+		meanJitter += (nanos - meanJitter) >> 4;
+		if (nanos > maxJitter) {
+			maxJitter = nanos;
+		}
+	}
+
+	/**
+	 * Records how long a frame took to emulate, firing a flight recorder
+	 * event if it took longer than a frame
+	 * 
+	 * @param start
+	 *            When the frame started
+	 * @param end
+	 *            When the frame finished
+	 */
+	void frameFinished(long start, long end) {
+		if (end - start > Computer.FRAME_NANOS) {
+			longFrames++;
+			LongFrameEvent event = new LongFrameEvent();
+			if (event.shouldCommit()) {
+				event.computer = computer.getId();
+				event.frame = computer.getFrameCount();
+				event.nanos = end - start;
+				event.commit();
+			}
+		}
+	}
+
+	/**
+	 * Records a frame that finished after the next one was due
+	 */
+	void timerUnderrun() {
+		timerUnderruns++;
+	}
+
+	/**
+	 * Records that FX0A started waiting for a key
+	 */
+	void keyWaitStarted() {
+		keyWaitStart = System.nanoTime();
+	}
+
+	/**
+	 * Records that FX0A got the key it was waiting for
+	 */
+	void keyWaitFinished() {
+		keyWaits++;
+		keyWaitNanos += System.nanoTime() - keyWaitStart;
+	}
+
+	/**
+	 * Measures the rates again if the last measurement is old enough
+	 */
+	private synchronized void sample() {
+		long now = System.nanoTime();
+		long elapsed = now - sampleTime;
+		if (elapsed < RATE_WINDOW_NANOS) {
+			return;
+		}
+		long instructions = this.instructions;
+		long frames = this.frames;
+		instructionsPerSecond = (instructions - sampleInstructions) * 1e9 / elapsed;
+		framesPerSecond = (frames - sampleFrames) * 1e9 / elapsed;
+		sampleTime = now;
+		sampleInstructions = instructions;
+		sampleFrames = frames;
+	}
+
+	@Override
+	public int getId() {
+		return computer.getId();
+	}
+
+	@Override
+	public boolean isRunning() {
+		return computer.isRunning();
+	}
+
+	@Override
+	public long getInstructions() {
+		return instructions;
+	}
+
+	@Override
+	public long getFrames() {
+		return frames;
+	}
+
+	@Override
+	public synchronized double getInstructionsPerSecond() {
+		sample();
+		return instructionsPerSecond;
+	}
+
+	@Override
+	public synchronized double getFramesPerSecond() {
+		sample();
+		return framesPerSecond;
+	}
+
+	@Override
+	public long getMeanJitterNanos() {
+		return meanJitter;
+	}
+
+	@Override
+	public long getMaxJitterNanos() {
+		return maxJitter;
+	}
+
+	@Override
+	public long getTimerUnderruns() {
+		return timerUnderruns;
+	}
+
+	@Override
+	public long getLongFrames() {
+		return longFrames;
+	}
+
+	@Override
+	public long getKeyWaits() {
+		return keyWaits;
+	}
+
+	@Override
+	public long getKeyWaitNanos() {
+		return keyWaitNanos;
+	}
+
+	@Override
+	public long getBlockInvalidations() {
+		return blockInvalidations;
+	}
+}
@@ -0,0 +1,107 @@
+package com.tycoon177.chip8.system;
+
+/**
+ * The metrics of a single computer as seen over JMX
+ * 
+ * @author Benjamin McHone
+ *
+ */
+public interface ComputerMetricsMBean {
+
+	/**
+	 * Gets the number that tells this computer apart from the others in the
+	 * same JVM
+	 * 
+	 * @return The id
+	 */
+	public int getId();
+
+	/**
+	 * Checks if the computer is running a rom on its own thread
+	 * 
+	 * @return Whether it is running
+	 */
+	public boolean isRunning();
+
+	/**
+	 * Gets the instructions executed since the last reset
+	 * 
+	 * @return The instruction count
+	 */
+	public long getInstructions();
+
+	/**
+	 * Gets the frames completed since the last reset
+	 * 
+	 * @return The frame count
+	 */
+	public long getFrames();
+
+	/**
+	 * Gets the instructions executed per second, measured over at least the
+	 * last second
+	 * 
+	 * @return The instructions per second
+	 */
+	public double getInstructionsPerSecond();
+
+	/**
+	 * Gets the frames completed per second, measured over at least the last
+	 * second. Should be close to 60 unless turbo mode is on.
+	 * 
+	 * @return The frames per second
+	 */
+	public double getFramesPerSecond();
+
+	/**
+	 * Gets the average time a frame started after it was due
+	 * 
+	 * @return The jitter in nanoseconds
+	 */
+	public long getMeanJitterNanos();
+
+	/**
+	 * Gets the longest time a frame started after it was due
+	 * 
+	 * @return The jitter in nanoseconds
+	 */
+	public long getMaxJitterNanos();
+
+	/**
+	 * Gets the amount of frames that finished after the next one was due, so
+	 * the 60 Hz timers fell behind real time
+	 * 
+	 * @return The underrun count
+	 */
+	public long getTimerUnderruns();
+
+	/**
+	 * Gets the amount of frames that took longer than a whole frame to
+	 * emulate
+	 * 
+	 * @return The long frame count
+	 */
+	public long getLongFrames();
+
+	/**
+	 * Gets how many times FX0A has waited for a key
+	 * 
+	 * @return The wait count
+	 */
+	public long getKeyWaits();
+
+	/**
+	 * Gets the total time FX0A has spent waiting for keys
+	 * 
+	 * @return The time in nanoseconds
+	 */
+	public long getKeyWaitNanos();
+
+	/**
+	 * Gets how many compiled blocks have been thrown away because memory
+	 * under them was written
+	 * 
+	 * @return The invalidation count
+	 */
+	public long getBlockInvalidations();
+}
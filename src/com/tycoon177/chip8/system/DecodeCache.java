@@ -0,0 +1,64 @@
+package com.tycoon177.chip8.system;
+
+import java.util.Arrays;
+
+/**
+ * Holds a decoded instruction for every address in memory so that opcodes only
+ * have to be decoded once. Entries are thrown away when either of their bytes
+ * are written to. Addresses wrap around the end of memory the same way memory
+ * does, so the instruction in the last byte takes its low byte from address 0.
+ * 
+ * @author Benjamin McHone
+ *
+ */
+public class DecodeCache implements MemoryListener {
+	private Instruction[] entries;
+	private Memory ram;
+	private int mask;
+
+	/**
+	 * Creates a decode cache in front of memory
+	 * 
+	 * @param ram
+	 *            The memory to decode instructions from
+	 */
+	public DecodeCache(Memory ram) {
+		this.ram = ram;
+		entries = new Instruction[ram.getSize()];
+		mask = entries.length - 1;
+		ram.addMemoryListener(this);
+	}
+
+	/**
+	 * Gets the instruction starting at an address, decoding it if needed
+	 * 
+	 * @param address
+	 *            The address of the instruction
+	 * @return The decoded instruction
+	 * @throws IllegalArgumentException
+	 *             Thrown when the address is outside of strict memory
+	 */
+	public Instruction get(int address) {
+		int index = address & mask;
+		if (index != address && ram.isStrict()) {
+			throw new IllegalArgumentException("Memory Out of Bounds!");
+		}
+		Instruction instruction = entries[index];
+		if (instruction == null) {
+			instruction = new Instruction(ram.getMemory(index) << 8 | ram.getMemory(index + 1));
+			entries[index] = instruction;
+		}
+		return instruction;
+	}
+
+	@Override
+	public void memoryChanged(int address) {
+		entries[address] = null;
+		entries[(address - 1) & mask] = null;
+	}
+
+	@Override
+	public void memoryReset() {
+		Arrays.fill(entries, null);
+	}
+}
@@ -1,37 +1,38 @@
 package com.tycoon177.chip8.system;
 
-import java.awt.Color;
-import java.awt.Dimension;
-import java.awt.Graphics;
-import java.awt.Graphics2D;
-
-import javax.swing.JComponent;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 /**
- * Represents the chip8 display, a 64x32 monochrome screen
+ * Represents the chip8 display, a 64x32 monochrome screen. The display only
+ * holds the pixels; drawing them somewhere is left to a
+ * {@link DisplayListener}, which is told about changes once a frame by
+ * {@link #endFrame()}.
  * 
  * @author Benjamin McHone
  *
  */
-public class Display extends JComponent {
-	private static final long serialVersionUID = 2590723775104624335L;
-	// Monochrome screen can be represented by booleans.
-	private boolean[] screen;
+public class Display implements FrameBuffer {
+	// Monochrome screen is packed one bit per pixel, 64 pixels to a long. The
+	// most significant bit of the first long in a row is the leftmost pixel.
+	private long[] screen;
 	private int width, height;
+	private int wordsPerRow;
+	private DisplayListener[] listeners;
+	// Whether the screen changed since the listeners were last told
+	private boolean dirty;
 
 	/**
 	 * Creates a screen of a set size
 	 * 
 	 * @param width
-	 *            The width of the display
+	 *            The width of the display, a multiple of 64
 	 * @param height
 	 *            The height of the display
 	 */
 	public Display(int width, int height) {
-		screen = new boolean[width * height];
-		this.width = width;
-		this.height = height;
-		setPreferredSize(new Dimension(width * 10, height * 10));
+		allocateScreen(width, height);
+		listeners = new DisplayListener[0];
 	}
 
 	/**
@@ -41,15 +42,31 @@ public class Display extends JComponent {
 		fill(false);
 	}
 
-	/**
-	 * Gets the screen as an array of booleans
-	 * 
-	 * @return The screen
-	 */
-	public boolean[] getScreen() {
+	@Override
+	public long[] getScreen() {
 		return screen;
 	}
 
+	@Override
+	public int getWidth() {
+		return width;
+	}
+
+	@Override
+	public int getHeight() {
+		return height;
+	}
+
+	@Override
+	public int getWordsPerRow() {
+		return wordsPerRow;
+	}
+
+	@Override
+	public boolean isPixelSet(int x, int y) {
+		return (screen[y * wordsPerRow + (x >> 6)] << (x & 63)) < 0;
+	}
+
 	/**
 	 * Draws a sprite across the 8 pixels, wrapping on the x and y coordinate
 	 * planes
@@ -64,32 +81,61 @@ public class Display extends JComponent {
 	 *         this sprite.
 	 */
 	public boolean draw(int xLoc, int yLoc, int value) {
-
-		String val = String.format("%8s", Integer.toBinaryString(value & 0xFF)).replace(" ", "0");
-		boolean turnedOff = false;
-		for (int i = 0; i < val.length(); i++) {
-			if (val.charAt(i) == '1') {
-				int location = ((xLoc + i) % width) + (((yLoc % height) * width));
-				if (screen[location]) {
-					turnedOff = true;
-				}
-				screen[location] ^= true;
-			}
+		int row = (yLoc % height) * wordsPerRow;
+		int column = xLoc % width;
+		long sprite = (value & 0xFFL) << 56;
+		boolean turnedOff;
+		if (wordsPerRow == 1) {
+			long mask = Long.rotateRight(sprite, column);
+			turnedOff = (screen[row] & mask) != 0;
+			screen[row] ^= mask;
+		} else {
+			// The sprite may spill over from one long into the next one
+			int bit = column & 63;
+			int first = row + (column >> 6);
+			int second = row + ((column >> 6) + 1) % wordsPerRow;
+			long high = sprite >>> bit;
+			long low = bit > 56 ? sprite << (64 - bit) : 0;
+			turnedOff = ((screen[first] & high) | (screen[second] & low)) != 0;
+			screen[first] ^= high;
+			screen[second] ^= low;
 		}
-		repaint();
+		dirty = true;
 		return turnedOff;
 	}
 
 	/**
-	 * Sets the size of the screen
+	 * Sets the size of the screen, keeping what fits of the old one
+	 * 
+	 * @param width
+	 *            The width of the display, a multiple of 64
+	 * @param height
+	 *            The height of the display
 	 */
-	@Override
 	public void setSize(int width, int height) {
+		long[] oldScreen = screen;
+		allocateScreen(width, height);
+		System.arraycopy(oldScreen, 0, screen, 0, Math.min(oldScreen.length, screen.length));
+		dirty = true;
+	}
+
+	/**
+	 * Changes the dimensions of the screen and allocates a blank screen for
+	 * them
+	 * 
+	 * @param width
+	 *            The width of the display, a multiple of 64
+	 * @param height
+	 *            The height of the display
+	 */
+	private void allocateScreen(int width, int height) {
+		if (width <= 0 || width % 64 != 0) {
+			throw new IllegalArgumentException("The display width must be a multiple of 64.");
+		}
 		this.width = width;
 		this.height = height;
-		boolean[] nScreen = new boolean[width * height];
-		System.arraycopy(screen, 0, nScreen, 0, Math.min(nScreen.length, screen.length));
-		screen = nScreen;
+		wordsPerRow = width / 64;
+		screen = new long[wordsPerRow * height];
 	}
 
 	/**
@@ -99,27 +145,8 @@ public class Display extends JComponent {
 	 *            What to fill the screen with
 	 */
 	public void fill(boolean value) {
-		for (int i = 0; i < screen.length; i++) {
-			screen[i] = value;
-		}
-		repaint();
-	}
-
-	@Override
-	public void paintComponent(Graphics g) {
-		Graphics2D g2 = (Graphics2D) g;
-		g2.setColor(Color.black);
-		g2.fillRect(0, 0, getWidth(), getHeight());
-		g2.setColor(Color.white);
-		int cellWidth = getWidth() / width;
-		int cellHeight = getHeight() / height;
-		for (int i = 0; i < height; i++) {
-			for (int j = 0; j < width; j++) {
-				if (screen[i * width + j]) {
-					g2.fillRect(j * cellWidth, i * cellHeight, cellWidth, cellHeight);
-				}
-			}
-		}
+		Arrays.fill(screen, value ? -1L : 0L);
+		dirty = true;
 	}
 
 	/**
@@ -129,16 +156,13 @@ public class Display extends JComponent {
 	 *            Amount to scroll
 	 */
 	public void scrollDown(int amount) {
-		boolean[] nScreen = new boolean[screen.length];
+		long[] nScreen = new long[screen.length];
 		for (int y = 0; y < height; y++) {
-			for (int x = 0; x < width; x++) {
-				int oldLoc = (x % width) + ((y % height) * width);
-				int nLoc = (x % width) + ((y + amount) % height) * width;
-				nScreen[nLoc] = screen[oldLoc];
-			}
+			int nY = (y + amount) % height;
+			System.arraycopy(screen, y * wordsPerRow, nScreen, nY * wordsPerRow, wordsPerRow);
 		}
 		System.arraycopy(nScreen, 0, screen, 0, screen.length);
-		repaint();
+		dirty = true;
 	}
 
 	/**
@@ -148,16 +172,23 @@ public class Display extends JComponent {
 	 *            Amount of lines to scroll
 	 */
 	public void scrollRight(int amount) {
-		boolean[] nScreen = new boolean[screen.length];
+		amount %= width;
+		int wordShift = amount >> 6;
+		int bitShift = amount & 63;
+		long[] row = new long[wordsPerRow];
 		for (int y = 0; y < height; y++) {
-			for (int x = 0; x < width; x++) {
-				int oldLoc = (x % width) + ((y % height) * width);
-				int nLoc = ((x + amount) % width) + (y % height) * width;
-				nScreen[nLoc] = screen[oldLoc];
+			int start = y * wordsPerRow;
+			System.arraycopy(screen, start, row, 0, wordsPerRow);
+			for (int j = 0; j < wordsPerRow; j++) {
+				long word = row[Math.floorMod(j - wordShift, wordsPerRow)];
+				if (bitShift != 0) {
+					long previous = row[Math.floorMod(j - wordShift - 1, wordsPerRow)];
+					word = (word >>> bitShift) | (previous << (64 - bitShift));
+				}
+				screen[start + j] = word;
 			}
 		}
-		System.arraycopy(nScreen, 0, screen, 0, screen.length);
-		repaint();
+		dirty = true;
 	}
 
 	/**
@@ -174,20 +205,105 @@ public class Display extends JComponent {
 	 * Sets the screen to the standard chip8 screen (64x32)
 	 */
 	public void setLow() {
-		width = 64;
-		height = 32;
-		screen = new boolean[width * height];
-		// setPreferredSize(new Dimension(width, height));
+		allocateScreen(64, 32);
+		dirty = true;
 	}
 
 	/**
 	 * Sets the screen to the Super Chip 8 screen. (128x64)
 	 */
 	public void setHigh() {
-		width = 128;
-		height = 64;
-		screen = new boolean[width * height];
-		// setPreferredSize(new Dimension(width, height));
+		allocateScreen(128, 64);
+		dirty = true;
+	}
+
+	/**
+	 * Writes the size and pixels of the screen into a buffer
+	 * 
+	 * @param buffer
+	 *            The buffer to write to
+	 */
+	public void save(ByteBuffer buffer) {
+		buffer.putShort((short) width);
+		buffer.putShort((short) height);
+		for (long row : screen) {
+			buffer.putLong(row);
+		}
+	}
+
+	/**
+	 * Replaces the screen with one written by {@link #save(ByteBuffer)}
+	 * 
+	 * @param buffer
+	 *            The buffer to read from
+	 */
+	public void load(ByteBuffer buffer) {
+		allocateScreen(buffer.getShort(), buffer.getShort());
+		for (int i = 0; i < screen.length; i++) {
+			screen[i] = buffer.getLong();
+		}
+		changed();
+	}
+
+	/**
+	 * Adds a listener that is told when the screen changes
+	 * 
+	 * @param listener
+	 *            The listener to add
+	 */
+	public void addDisplayListener(DisplayListener listener) {
+		listeners = Arrays.copyOf(listeners, listeners.length + 1);
+		listeners[listeners.length - 1] = listener;
+	}
+
+	/**
+	 * Replaces the whole screen
+	 * 
+	 * @param width
+	 *            The width of the screen
+	 * @param height
+	 *            The height of the screen
+	 * @param words
+	 *            The packed rows, in the same layout as {@link #getScreen()}
+	 */
+	void setScreen(int width, int height, long[] words) {
+		if (width != this.width || height != this.height) {
+			allocateScreen(width, height);
+		}
+		System.arraycopy(words, 0, screen, 0, screen.length);
+		changed();
+	}
+
+	/**
+	 * Sets a single long of the packed screen without telling the listeners
+	 * 
+	 * @param index
+	 *            The index into {@link #getScreen()}
+	 * @param value
+	 *            The 64 pixels to put there
+	 */
+	void setWord(int index, long value) {
+		screen[index] = value;
 	}
 
+	/**
+	 * Tells the listeners about anything drawn since the last frame ended.
+	 * Drawing does not tell the listeners itself, so they hear about the
+	 * screen at most once a frame.
+	 */
+	public void endFrame() {
+		if (dirty) {
+			changed();
+		}
+	}
+
+	/**
+	 * Tells the listeners that the screen has changed
+	 */
+	void changed() {
+		dirty = false;
+		for (DisplayListener listener : listeners) {
+			listener.displayChanged();
+		}
+	}
 }
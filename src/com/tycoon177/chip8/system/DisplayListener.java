@@ -0,0 +1,16 @@
+package com.tycoon177.chip8.system;
+
+/**
+ * Gets notified when the pixels on the display change
+ * 
+ * @author Benjamin McHone
+ *
+ */
+public interface DisplayListener {
+
+	/**
+	 * Called at the end of a frame in which the display was drawn to,
+	 * scrolled, cleared or resized, or after it was replaced by a snapshot
+	 */
+	public void displayChanged();
+}
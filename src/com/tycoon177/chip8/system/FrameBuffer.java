@@ -0,0 +1,50 @@
+package com.tycoon177.chip8.system;
+
+/**
+ * A monochrome screen that can be read by whatever is showing it
+ * 
+ * @author Benjamin McHone
+ *
+ */
+public interface FrameBuffer {
+
+	/**
+	 * Gets the width of the screen
+	 * 
+	 * @return The width in pixels
+	 */
+	public int getWidth();
+
+	/**
+	 * Gets the height of the screen
+	 * 
+	 * @return The height in pixels
+	 */
+	public int getHeight();
+
+	/**
+	 * Gets the number of longs used to store each row of the screen
+	 * 
+	 * @return The longs per row
+	 */
+	public int getWordsPerRow();
+
+	/**
+	 * Gets the screen as packed rows of pixels, with the leftmost pixel in the
+	 * most significant bit
+	 * 
+	 * @return The screen, {@link #getWordsPerRow()} longs for each row
+	 */
+	public long[] getScreen();
+
+	/**
+	 * Checks if a pixel is turned on
+	 * 
+	 * @param x
+	 *            The column of the pixel
+	 * @param y
+	 *            The row of the pixel
+	 * @return Whether the pixel is on
+	 */
+	public boolean isPixelSet(int x, int y);
+}
@@ -0,0 +1,142 @@
+package com.tycoon177.chip8.system;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hands finished frames from the emulation thread to whatever shows them
+ * without either side waiting on the other. Three frames are used: the
+ * emulator copies the display into the back frame and swaps it with the
+ * middle one, and the reader swaps its front frame with the middle one when
+ * the middle one is newer. Neither side ever sees a frame the other is
+ * writing.
+ * 
+ * @author Benjamin McHone
+ *
+ */
+public class FrameExchange implements DisplayListener {
+	private Display display;
+	private AtomicReference<Frame> middle;
+	// Only touched by the thread publishing frames
+	private Frame back;
+	private long sequence;
+	// Only touched by the thread reading frames
+	private Frame front;
+	private DisplayListener[] listeners;
+
+	/**
+	 * Creates an exchange for a display, publishing a frame every time the
+	 * display tells its listeners that it changed
+	 * 
+	 * @param display
+	 *            The display to copy frames from
+	 */
+	public FrameExchange(Display display) {
+		this.display = display;
+		back = new Frame();
+		front = new Frame();
+		middle = new AtomicReference<>(new Frame());
+		listeners = new DisplayListener[0];
+		publish();
+		display.addDisplayListener(this);
+	}
+
+	@Override
+	public void displayChanged() {
+		publish();
+		for (DisplayListener listener : listeners) {
+			listener.displayChanged();
+		}
+	}
+
+	/**
+	 * Copies the display into the back frame and makes it the newest frame
+	 */
+	private void publish() {
+		back.copy(display, ++sequence);
+		back = middle.getAndSet(back);
+	}
+
+	/**
+	 * Gets the newest published frame. The frame stays the same until the
+	 * next call, and only one thread may call this.
+	 * 
+	 * @return The newest frame
+	 */
+	public FrameBuffer acquire() {
+		if (middle.get().sequence > front.sequence) {
+			front = middle.getAndSet(front);
+		}
+		return front;
+	}
+
+	/**
+	 * Adds a listener that is told after each frame is published. It is
+	 * called on the thread that published the frame.
+	 * 
+	 * @param listener
+	 *            The listener to add
+	 */
+	public void addDisplayListener(DisplayListener listener) {
+		listeners = Arrays.copyOf(listeners, listeners.length + 1);
+		listeners[listeners.length - 1] = listener;
+	}
+
+	/**
+	 * A copy of the display at the end of a frame
+	 * 
+	 * @author Benjamin McHone
+	 *
+	 */
+	private static class Frame implements FrameBuffer {
+		private long[] screen = new long[0];
+		private int width, height;
+		private int wordsPerRow = 1;
+		private volatile long sequence;
+
+		/**
+		 * Copies the pixels and size of a display
+		 * 
+		 * @param display
+		 *            The display to copy
+		 * @param sequence
+		 *            The number of the frame
+		 */
+		void copy(Display display, long sequence) {
+			long[] pixels = display.getScreen();
+			if (screen.length != pixels.length) {
+				screen = new long[pixels.length];
+			}
+			System.arraycopy(pixels, 0, screen, 0, pixels.length);
+			width = display.getWidth();
+			height = display.getHeight();
+			wordsPerRow = display.getWordsPerRow();
+			this.sequence = sequence;
+		}
+
+		@Override
+		public int getWidth() {
+			return width;
+		}
+
+		@Override
+		public int getHeight() {
+			return height;
+		}
+
+		@Override
+		public int getWordsPerRow() {
+			return wordsPerRow;
+		}
+
+		@Override
+		public long[] getScreen() {
+			return screen;
+		}
+
+		@Override
+		public boolean isPixelSet(int x, int y) {
+			return (screen[y * wordsPerRow + (x >> 6)] << (x & 63)) < 0;
+		}
+	}
+}
@@ -0,0 +1,110 @@
+package com.tycoon177.chip8.system;
+
+/**
+ * Short runs of instructions that roms use so often that the block tier runs
+ * them as a single step. A fused run does exactly what its instructions would
+ * have done one at a time, and only counts as one step on the host.
+ * 
+ * @author Benjamin McHone
+ *
+ */
+public enum Fusion {
+	/**
+	 * 6XNN followed by 6YNN, setting up two registers
+	 */
+	SET_PAIR(2),
+	/**
+	 * ANNN followed by DXYN, pointing I at a sprite and drawing it
+	 */
+	DRAW(2),
+	/**
+	 * FX07, 3X00 and a 1NNN back to the FX07, waiting for the delay timer to
+	 * run out
+	 */
+	DELAY_WAIT(3),
+	/**
+	 * 7XNN, 3XNN and a 1NNN, counting VX up to a limit and jumping until it
+	 * is reached
+	 */
+	COUNTER(3);
+
+	private int length;
+
+	/**
+	 * Creates a fusion
+	 * 
+	 * @param length
+	 *            The amount of instructions that are fused
+	 */
+	Fusion(int length) {
+		this.length = length;
+	}
+
+	/**
+	 * Gets the amount of instructions that are fused, counting the jump at
+	 * the end of a loop once
+	 * 
+	 * @return The instruction count
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * Finds the fusion that starts at an instruction of a block. Loops end a
+	 * block at their skip, so their jump is the instruction just past the
+	 * block.
+	 * 
+	 * @param instructions
+	 *            The instructions of the block
+	 * @param index
+	 *            The index of the first instruction to fuse
+	 * @param address
+	 *            The address of the first instruction to fuse
+	 * @param next
+	 *            The instruction just past the block, or null at the end of
+	 *            memory
+	 * @return The fusion, or null when the instructions are not one
+	 */
+	public static Fusion find(Instruction[] instructions, int index, int address, Instruction next) {
+		if (index + 1 >= instructions.length) {
+			return null;
+		}
+		Instruction first = instructions[index];
+		Instruction second = instructions[index + 1];
+		switch (first.getType()) {
+			case OPCODE_6XNN:
+				return second.getType() == Opcode.OPCODE_6XNN ? SET_PAIR : null;
+			case OPCODE_ANNN:
+				return second.getType() == Opcode.OPCODE_DXYN ? DRAW : null;
+			case OPCODE_FX07:
+				if (isLoop(instructions, index, next) && second.getNN() == 0 && next.getNNN() == address) {
+					return DELAY_WAIT;
+				}
+				return null;
+			case OPCODE_7XNN:
+				return isLoop(instructions, index, next) ? COUNTER : null;
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * Checks if an instruction is followed by a 3XNN on the same register
+	 * that ends the block, and then by a jump
+	 * 
+	 * @param instructions
+	 *            The instructions of the block
+	 * @param index
+	 *            The index of the instruction before the skip
+	 * @param next
+	 *            The instruction just past the block
+	 * @return Whether the instructions form the test and jump of a loop
+	 */
+	private static boolean isLoop(Instruction[] instructions, int index, Instruction next) {
+		Instruction skip = instructions[index + 1];
+		return index + 2 == instructions.length && skip.getType() == Opcode.OPCODE_3XNN
+				&& skip.getX() == instructions[index].getX() && next != null
+				&& next.getType() == Opcode.OPCODE_1NNN;
+	}
+}
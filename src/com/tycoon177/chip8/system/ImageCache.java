@@ -0,0 +1,76 @@
+package com.tycoon177.chip8.system;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps one copy of every rom and system image loaded, looked up by content,
+ * so that any number of computers running the same rom share a single array.
+ * Arrays handed out by the cache are never written to. Images stay cached for
+ * the life of the JVM, which is fine for roms of a few kilobytes.
+ * 
+ * @author Benjamin McHone
+ *
+ */
+class ImageCache {
+	private static final ConcurrentHashMap<Content, byte[]> images = new ConcurrentHashMap<>();
+
+	private ImageCache() {
+	}
+
+	/**
+	 * Gets the shared copy of an image
+	 * 
+	 * @param image
+	 *            The bytes of the image, which must not be written to after
+	 *            this call
+	 * @return The cached array with the same content, which is the given
+	 *         array if it was not cached yet
+	 */
+	static byte[] intern(byte[] image) {
+		byte[] cached = images.putIfAbsent(new Content(image), image);
+		return cached == null ? image : cached;
+	}
+
+	/**
+	 * Gets the amount of different images cached
+	 * 
+	 * @return The image count
+	 */
+	static int size() {
+		return images.size();
+	}
+
+	/**
+	 * Compares byte arrays by their content
+	 * 
+	 * @author Benjamin McHone
+	 *
+	 */
+	private static class Content {
+		private byte[] bytes;
+		private int hash;
+
+		/**
+		 * Wraps an array
+		 * 
+		 * @param bytes
+		 *            The array
+		 */
+		Content(byte[] bytes) {
+			this.bytes = bytes;
+			this.hash = Arrays.hashCode(bytes);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Content && ((Content) other).hash == hash
+					&& Arrays.equals(((Content) other).bytes, bytes);
+		}
+	}
+}
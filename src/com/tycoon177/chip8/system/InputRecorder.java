@@ -0,0 +1,111 @@
+package com.tycoon177.chip8.system;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Writes the key presses and releases of a computer to a file, each against
+ * the cycle it happened on, so that {@link InputReplay} can play them back on
+ * exactly the same instruction.
+ * <p>
+ * The file starts with the instructions per frame, the cycle count and a
+ * snapshot of the computer. Each event after that is the cycles since the
+ * event before it as a variable length number, then a byte holding the key in
+ * the low four bits and whether it was pressed in bit four. The last event is
+ * {@link #END} on the cycle recording stopped.
+ * 
+ * @author Benjamin McHone
+ *
+ */
+public class InputRecorder {
+	/**
+	 * Marks the start of an input file, "C8I" and the format version
+	 */
+	public static final int MAGIC = 0x43384901;
+	/**
+	 * The event written when recording stops
+	 */
+	public static final int END = 0xff;
+	private DataOutputStream output;
+	private long lastCycle;
+
+	/**
+	 * Creates an input file
+	 * 
+	 * @param file
+	 *            The file to write
+	 * @param snapshot
+	 *            The snapshot of the computer when recording starts
+	 * @param instructionsPerFrame
+	 *            The instructions per frame of the computer
+	 * @param cycle
+	 *            The cycle count of the computer when recording starts
+	 * @throws IOException
+	 *             Thrown when the file cannot be written
+	 */
+	public InputRecorder(File file, byte[] snapshot, int instructionsPerFrame, long cycle) throws IOException {
+		output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		output.writeInt(MAGIC);
+		output.writeShort(instructionsPerFrame);
+		output.writeLong(cycle);
+		output.writeInt(snapshot.length);
+		output.write(snapshot);
+		lastCycle = cycle;
+	}
+
+	/**
+	 * Writes a key press or release
+	 * 
+	 * @param cycle
+	 *            The cycle the key changed before
+	 * @param key
+	 *            The key (0x0-0xF)
+	 * @param pressed
+	 *            Whether it was pressed
+	 * @throws IOException
+	 *             Thrown when the file cannot be written
+	 */
+	public void record(long cycle, int key, boolean pressed) throws IOException {
+		writeEvent(cycle, key | (pressed ? 0x10 : 0));
+	}
+
+	/**
+	 * Writes the end of the recording and closes the file
+	 * 
+	 * @param cycle
+	 *            The cycle recording stopped on
+	 * @throws IOException
+	 *             Thrown when the file cannot be written
+	 */
+	public void close(long cycle) throws IOException {
+		try {
+			writeEvent(cycle, END);
+		} finally {
+			output.close();
+		}
+	}
+
+	/**
+	 * Writes a single event
+	 * 
+	 * @param cycle
+	 *            The cycle of the event
+	 * @param event
+	 *            The event byte
+	 * @throws IOException
+	 *             Thrown when the file cannot be written
+	 */
+	private void writeEvent(long cycle, int event) throws IOException {
+		long delta = cycle - lastCycle;
+		lastCycle = cycle;
+		while ((delta & ~0x7fL) != 0) {
+			output.write((int) (delta & 0x7f) | 0x80);
+			delta >>>= 7;
+		}
+		output.write((int) delta);
+		output.write(event);
+	}
+}
@@ -0,0 +1,168 @@
+package com.tycoon177.chip8.system;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Plays back a file written by {@link InputRecorder}. Every key press and
+ * release is applied just before the instruction it was recorded on.
+ * 
+ * @author Benjamin McHone
+ *
+ */
+public class InputReplay {
+	private byte[] snapshot;
+	private int instructionsPerFrame;
+	private long[] cycles;
+	private byte[] events;
+	private int count;
+	private long endCycle;
+	private int next;
+
+	/**
+	 * Reads an input file
+	 * 
+	 * @param file
+	 *            The file to read
+	 * @throws IOException
+	 *             Thrown when the file cannot be read or is not an input file
+	 */
+	public InputReplay(File file) throws IOException {
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (input.readInt() != InputRecorder.MAGIC) {
+				throw new IOException("Not an input file: " + file);
+			}
+			instructionsPerFrame = input.readShort();
+			long cycle = input.readLong();
+			snapshot = new byte[input.readInt()];
+			input.readFully(snapshot);
+			cycles = new long[64];
+			events = new byte[64];
+			while (true) {
+				cycle += readDelta(input);
+				int event = input.readUnsignedByte();
+				if (event == InputRecorder.END) {
+					endCycle = cycle;
+					break;
+				}
+				if (count == cycles.length) {
+					cycles = Arrays.copyOf(cycles, count * 2);
+					events = Arrays.copyOf(events, count * 2);
+				}
+				cycles[count] = cycle;
+				events[count] = (byte) event;
+				count++;
+			}
+		} catch (EOFException e) {
+			throw new IOException("Input file ends early: " + file, e);
+		}
+	}
+
+	/**
+	 * Reads a variable length cycle delta
+	 * 
+	 * @param input
+	 *            The stream to read from
+	 * @return The delta
+	 * @throws IOException
+	 *             Thrown when the file cannot be read
+	 */
+	private static long readDelta(DataInputStream input) throws IOException {
+		long delta = 0;
+		int shift = 0;
+		int b;
+		do {
+			b = input.readUnsignedByte();
+			delta |= (long) (b & 0x7f) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return delta;
+	}
+
+	/**
+	 * Gets the snapshot of the computer when recording started
+	 * 
+	 * @return The snapshot
+	 */
+	public byte[] getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * Gets the instructions per frame the computer was recorded at
+	 * 
+	 * @return The instructions per frame
+	 */
+	public int getInstructionsPerFrame() {
+		return instructionsPerFrame;
+	}
+
+	/**
+	 * Gets the cycle recording stopped on
+	 * 
+	 * @return The last cycle
+	 */
+	public long getEndCycle() {
+		return endCycle;
+	}
+
+	/**
+	 * Gets the amount of key presses and releases
+	 * 
+	 * @return The event count
+	 */
+	public int getEventCount() {
+		return count;
+	}
+
+	/**
+	 * Starts playing back from the first event again
+	 */
+	public void reset() {
+		next = 0;
+	}
+
+	/**
+	 * Goes back or forward to the events that have not been applied yet at a
+	 * cycle, such as after the computer stepped back
+	 * 
+	 * @param cycle
+	 *            The cycle about to be executed
+	 */
+	void seek(long cycle) {
+		next = 0;
+		while (next < count && cycles[next] < cycle) {
+			next++;
+		}
+	}
+
+	/**
+	 * Gets the cycle of the next event to apply
+	 * 
+	 * @return The cycle, or {@link Long#MAX_VALUE} when every event has been
+	 *         applied
+	 */
+	long getNextCycle() {
+		return next < count ? cycles[next] : Long.MAX_VALUE;
+	}
+
+	/**
+	 * Applies every event recorded up to a cycle
+	 * 
+	 * @param cycle
+	 *            The cycle about to be executed
+	 * @param keyboard
+	 *            The keyboard to apply the events to
+	 */
+	void apply(long cycle, Keyboard keyboard) {
+		while (next < count && cycles[next] <= cycle) {
+			int event = events[next++];
+			keyboard.setKeyPressed(event & 0xf, (event & 0x10) != 0);
+		}
+	}
+}
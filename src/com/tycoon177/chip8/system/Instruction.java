@@ -0,0 +1,98 @@
+package com.tycoon177.chip8.system;
+
+/**
+ * An opcode that has already been decoded, holding its operands so that they
+ * do not need to be extracted every time it is executed.
+ * 
+ * @author Benjamin McHone
+ *
+ */
+public class Instruction {
+	private Opcode type;
+	private int opcode;
+	private int x, y, n, nn, nnn;
+
+	/**
+	 * Decodes an opcode into an instruction
+	 * 
+	 * @param opcode
+	 *            The 2 byte opcode
+	 */
+	public Instruction(int opcode) {
+		this.opcode = opcode & 0xffff;
+		this.type = Opcode.decode(this.opcode);
+		this.x = (this.opcode & 0x0f00) >> 8;
+		this.y = (this.opcode & 0x00f0) >> 4;
+		this.n = this.opcode & 0xf;
+		this.nn = this.opcode & 0xff;
+		this.nnn = this.opcode & 0xfff;
+	}
+
+	/**
+	 * Gets the family of the opcode
+	 * 
+	 * @return The opcode family
+	 */
+	public Opcode getType() {
+		return type;
+	}
+
+	/**
+	 * Gets the raw opcode
+	 * 
+	 * @return The 2 byte opcode
+	 */
+	public int getOpcode() {
+		return opcode;
+	}
+
+	/**
+	 * Gets the X register index
+	 * 
+	 * @return The index of VX
+	 */
+	public int getX() {
+		return x;
+	}
+
+	/**
+	 * Gets the Y register index
+	 * 
+	 * @return The index of VY
+	 */
+	public int getY() {
+		return y;
+	}
+
+	/**
+	 * Gets the lowest nibble
+	 * 
+	 * @return N
+	 */
+	public int getN() {
+		return n;
+	}
+
+	/**
+	 * Gets the lowest byte
+	 * 
+	 * @return NN
+	 */
+	public int getNN() {
+		return nn;
+	}
+
+	/**
+	 * Gets the address held in the lowest 12 bits
+	 * 
+	 * @return NNN
+	 */
+	public int getNNN() {
+		return nnn;
+	}
+
+	@Override
+	public String toString() {
+		return "0x" + Integer.toHexString(opcode);
+	}
+}
@@ -0,0 +1,20 @@
+package com.tycoon177.chip8.system;
+
+/**
+ * Accepts presses and releases of the 16 keys on the chip8 keypad
+ * 
+ * @author Benjamin McHone
+ *
+ */
+public interface KeyInput {
+
+	/**
+	 * Sets the state of a key press
+	 * 
+	 * @param index
+	 *            key to set (0x0-0xF)
+	 * @param state
+	 *            Whether it is pressed
+	 */
+	public void setKeyPressed(int index, boolean state);
+}
@@ -1,49 +1,21 @@
 package com.tycoon177.chip8.system;
 
-import java.awt.event.KeyEvent;
-import java.util.HashMap;
-
 /**
  * Stores the states for the 16 key keypad
  * 
  * @author Benjamin McHone
  *
  */
-public class Keyboard {
+public class Keyboard implements KeyInput {
 	private boolean[] keys;
-	private volatile boolean keyPressed;
+	private boolean keyPressed;
 	private int lastKeyPressed;
-	private HashMap<Integer, Integer> keyboardLookup;
 
 	/**
 	 * Constructs the keyboard object
 	 */
 	public Keyboard() {
 		keys = new boolean[16];
-		keyboardLookup = new HashMap<>();
-		setupKeyboardLookup();
-	}
-
-	/**
-	 * Sets up the lookup map.
-	 */
-	private void setupKeyboardLookup() {
-		keyboardLookup.put(KeyEvent.VK_1, 0x1);
-		keyboardLookup.put(KeyEvent.VK_2, 0x2);
-		keyboardLookup.put(KeyEvent.VK_3, 0x3);
-		keyboardLookup.put(KeyEvent.VK_4, 0xC);
-		keyboardLookup.put(KeyEvent.VK_Q, 0x4);
-		keyboardLookup.put(KeyEvent.VK_W, 0x5);
-		keyboardLookup.put(KeyEvent.VK_E, 0x6);
-		keyboardLookup.put(KeyEvent.VK_R, 0xD);
-		keyboardLookup.put(KeyEvent.VK_A, 0x7);
-		keyboardLookup.put(KeyEvent.VK_S, 0x8);
-		keyboardLookup.put(KeyEvent.VK_D, 0x9);
-		keyboardLookup.put(KeyEvent.VK_F, 0xE);
-		keyboardLookup.put(KeyEvent.VK_Z, 0xA);
-		keyboardLookup.put(KeyEvent.VK_X, 0x0);
-		keyboardLookup.put(KeyEvent.VK_C, 0xB);
-		keyboardLookup.put(KeyEvent.VK_V, 0xF);
 	}
 
 	/**
@@ -57,14 +29,7 @@ public class Keyboard {
 		return keys[index];
 	}
 
-	/**
-	 * Sets the state of a key press
-	 * 
-	 * @param index
-	 *            key to set
-	 * @param state
-	 *            Whether it is pressed
-	 */
+	@Override
 	public void setKeyPressed(int index, boolean state) {
 		if (state) {
 			keyPressed = true;
@@ -74,34 +39,58 @@ public class Keyboard {
 	}
 
 	/**
-	 * Pauses execution until a key is pressed
-	 * 
-	 * @return Which key was pressed
+	 * Forgets any earlier key press so that {@link #getKeyPress()} only
+	 * reports keys pressed from now on
 	 */
-	public int waitForKeyPress() {
+	public void clearKeyPress() {
 		keyPressed = false;
-		while (!keyPressed) {
-			try {
-				Thread.sleep(10); // Try not to use ALL the cpu while waiting.
-			} catch (InterruptedException e) {
+	}
+
+	/**
+	 * Gets the key pressed since {@link #clearKeyPress()} was last called
+	 * 
+	 * @return The last key pressed, or -1 if no key has been pressed
+	 */
+	public int getKeyPress() {
+		return keyPressed ? lastKeyPressed : -1;
+	}
+
+	/**
+	 * Sets the key pressed since {@link #clearKeyPress()} was last called
+	 * 
+	 * @param key
+	 *            The last key pressed, or -1 if no key has been pressed
+	 */
+	public void setKeyPress(int key) {
+		keyPressed = key != -1;
+		lastKeyPressed = keyPressed ? key : 0;
+	}
+
+	/**
+	 * Gets the state of every key as a bit mask
+	 * 
+	 * @return Bit n is set when key n is pressed
+	 */
+	public int getKeyState() {
+		int state = 0;
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i]) {
+				state |= 1 << i;
 			}
 		}
-		return lastKeyPressed;
+		return state;
 	}
 
 	/**
-	 * Gets the key mapping of a normal keyboard to the chip8 keyboard
+	 * Sets the state of every key from a bit mask
 	 * 
-	 * @param keycode
-	 *            The keyboard keycode
-	 * @return The chip8 keyboard equivalent
+	 * @param state
+	 *            Bit n is set when key n is pressed
 	 */
-	public int standardKeyboardToHex(int keycode) {
-		if (keyboardLookup.containsKey((Integer) keycode)) {
-			return keyboardLookup.get(keycode);
-
+	public void setKeyState(int state) {
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = (state & (1 << i)) != 0;
 		}
-		return -1;
 	}
 
 	/**
@@ -111,6 +100,7 @@ public class Keyboard {
 		for (int i = 0; i < keys.length; i++) {
 			keys[i] = false;
 		}
+		keyPressed = false;
 	}
 
 }
@@ -0,0 +1,29 @@
+package com.tycoon177.chip8.system;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event for a frame that took longer than a whole 60 Hz frame
+ * to emulate
+ * 
+ * @author Benjamin McHone
+ *
+ */
+@Name("com.tycoon177.chip8.LongFrame")
+@Label("Long Frame")
+@Category("CHIP-8")
+@Description("A frame took longer to emulate than the time it is shown for")
+class LongFrameEvent extends Event {
+	@Label("Computer")
+	int computer;
+	@Label("Frame")
+	long frame;
+	@Label("Emulation Time")
+	@Timespan
+	long nanos;
+}
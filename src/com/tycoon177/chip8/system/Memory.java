@@ -1,31 +1,88 @@
 package com.tycoon177.chip8.system;
 
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Stores the Ram of the chip8
+ * Stores the Ram of the chip8. Memory is split into pages that can be shared
+ * between forked copies, a shared page is only copied once one of the copies
+ * writes to it.
  * 
  * @author Benjamin McHone
  *
  */
 public class Memory {
-	private int[] memory;
+	/**
+	 * The file holding the system image that is copied below 0x200
+	 */
+	public static final String SYSTEM_FILE = "chip8.rom";
+	/**
+	 * The size of a page in bytes
+	 */
+	public static final int PAGE_SIZE = 256;
+	private static final int PAGE_SHIFT = 8;
+	// Never written to, it is always shared.
+	private static final byte[] ZERO_PAGE = new byte[PAGE_SIZE];
+	// System images are read from disk once and shared by every instance.
+	private static final ConcurrentHashMap<String, byte[][]> systemImages = new ConcurrentHashMap<>();
+	private byte[][] pages;
+	// Whether each page may be seen by another memory and has to be copied
+	// before it is written
+	private boolean[] shared;
+	// Pages written since the dirty pages were last cleared
+	private boolean[] dirty;
+	private int mask;
+	private boolean strict;
+	private byte[][] system;
+	private MemoryListener[] listeners;
 
 	/**
 	 * Allocates the correct amount of memory for the system.
 	 * 
 	 * @param amount
 	 *            The amount, in bytes, of memory to be allowed to the system.
-	 * 
+	 *            Must be a power of two of at least a page, addresses wrap
+	 *            around at this size.
+	 *
 	 */
 	public Memory(int amount) {
-		memory = new int[amount];
+		if (amount < PAGE_SIZE || Integer.bitCount(amount) != 1) {
+			throw new IllegalArgumentException("The amount of memory must be a power of two of at least a page.");
+		}
+		pages = new byte[amount / PAGE_SIZE][];
+		shared = new boolean[pages.length];
+		dirty = new boolean[pages.length];
+		mask = amount - 1;
+		listeners = new MemoryListener[0];
 		try {
-			loadSystemFromFile("chip8.rom");
+			system = getSystemImage(SYSTEM_FILE);
 		} catch (IOException e) {
 			e.printStackTrace();
+			system = new byte[0][];
 		}
+		copySystem();
+	}
+
+	/**
+	 * Creates a memory that shares all of its pages with another one
+	 * 
+	 * @param parent
+	 *            The memory to share pages with
+	 */
+	private Memory(Memory parent) {
+		pages = parent.pages.clone();
+		shared = new boolean[pages.length];
+		Arrays.fill(shared, true);
+		Arrays.fill(parent.shared, true);
+		dirty = new boolean[pages.length];
+		mask = parent.mask;
+		strict = parent.strict;
+		system = parent.system;
+		listeners = new MemoryListener[0];
 	}
 
 	/**
@@ -37,10 +94,29 @@ public class Memory {
 	 *            The value to set the memory to
 	 */
 	public void setMemory(Address address, int data) {
-		if (address.getAddress() < 0 || address.getAddress() >= memory.length) {
-			throw new IllegalArgumentException("Memory Out of Bounds!");
+		setMemory(address.getAddress(), data);
+	}
+
+	/**
+	 * Sets a specific byte of memory. Addresses past the end wrap around
+	 * unless the memory is strict.
+	 * 
+	 * @param address
+	 *            The address for the memory to be set
+	 * @param data
+	 *            The value to set the memory to
+	 */
+	public void setMemory(int address, int data) {
+		if (strict) {
+			checkBounds(address);
+		}
+		address &= mask;
+		int page = address >>> PAGE_SHIFT;
+		writablePage(page)[address & (PAGE_SIZE - 1)] = (byte) data;
+		dirty[page] = true;
+		for (MemoryListener listener : listeners) {
+			listener.memoryChanged(address);
 		}
-		memory[address.getAddress()] = data;
 	}
 
 	/**
@@ -51,50 +127,265 @@ public class Memory {
 	 * @return The memory at the specified address.
 	 */
 	public int getMemory(Address address) {
-		if (address.getAddress() < 0 || address.getAddress() >= memory.length) {
+		return getMemory(address.getAddress());
+	}
+
+	/**
+	 * Gets a value from memory. Addresses past the end wrap around unless the
+	 * memory is strict.
+	 * 
+	 * @param address
+	 *            The address to read from
+	 * @return The memory at the specified address.
+	 */
+	public int getMemory(int address) {
+		if (strict) {
+			checkBounds(address);
+		}
+		address &= mask;
+		return pages[address >>> PAGE_SHIFT][address & (PAGE_SIZE - 1)] & 0xff;
+	}
+
+	/**
+	 * Gets a page that this memory may write to, copying it first if it is
+	 * shared.
+	 * 
+	 * @param page
+	 *            The page number
+	 * @return The page
+	 */
+	private byte[] writablePage(int page) {
+		if (shared[page]) {
+			pages[page] = pages[page].clone();
+			shared[page] = false;
+		}
+		return pages[page];
+	}
+
+	/**
+	 * Throws if an address is outside of memory
+	 * 
+	 * @param address
+	 *            The address to check
+	 */
+	private void checkBounds(int address) {
+		if (address < 0 || address > mask) {
 			throw new IllegalArgumentException("Memory Out of Bounds!");
 		}
-		return memory[address.getAddress()] & 0xff;
 	}
 
 	/**
-	 * Gets the memory stored
+	 * Gets a copy of the memory stored
 	 * 
 	 * @return The memory stored
 	 */
-	public int[] getMemory() {
+	public byte[] getMemory() {
+		byte[] memory = new byte[getSize()];
+		for (int i = 0; i < pages.length; i++) {
+			System.arraycopy(pages[i], 0, memory, i * PAGE_SIZE, PAGE_SIZE);
+		}
 		return memory;
 	}
 
 	/**
-	 * Gets the rom file and loads it into memory.
+	 * Gets the amount of memory
+	 * 
+	 * @return The size in bytes
+	 */
+	public int getSize() {
+		return mask + 1;
+	}
+
+	/**
+	 * Gets the amount of pages that are not shared with any other memory
+	 * 
+	 * @return The pages owned by only this memory
+	 */
+	public int getPrivatePageCount() {
+		int count = 0;
+		for (boolean isShared : shared) {
+			if (!isShared) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Gets which pages have been written since {@link #clearDirtyPages()} was
+	 * last called. A page is also dirty after a reset or a load.
+	 * 
+	 * @return Whether each page is dirty
+	 */
+	public boolean[] getDirtyPages() {
+		return dirty;
+	}
+
+	/**
+	 * Marks every page as clean
+	 */
+	public void clearDirtyPages() {
+		Arrays.fill(dirty, false);
+	}
+
+	/**
+	 * Sets whether addresses outside of memory throw instead of wrapping.
+	 * Useful when debugging a rom.
+	 * 
+	 * @param strict
+	 *            Whether to check bounds
+	 */
+	public void setStrict(boolean strict) {
+		this.strict = strict;
+	}
+
+	/**
+	 * Checks if addresses outside of memory throw instead of wrapping
+	 * 
+	 * @return Whether bounds are checked
+	 */
+	public boolean isStrict() {
+		return strict;
+	}
+
+	/**
+	 * Creates a copy of this memory that shares every page with it until
+	 * either of them writes to the page. Listeners are not copied.
+	 * 
+	 * @return The copy
+	 */
+	public Memory fork() {
+		return new Memory(this);
+	}
+
+	/**
+	 * Gets the system image from a file split into pages, reading it only the
+	 * first time it is asked for.
 	 * 
 	 * @param file
 	 *            The file name that is the rom.
+	 * @return The pages holding the first 0x200 bytes of the file
 	 * @throws IOException
 	 *             Thrown when the file cannot be found or read.
 	 */
-	private void loadSystemFromFile(String file) throws IOException {
-		FileInputStream input = new FileInputStream(file);
-		byte[] rom = new byte[0x200];
-		input.read(rom);
-		input.close();
-		for (int i = 0; i < rom.length; i++) {
-			memory[i] = rom[i];
+	private static byte[][] getSystemImage(String file) throws IOException {
+		byte[][] image = systemImages.get(file);
+		if (image == null) {
+			byte[] rom = loadSystemFromFile(file);
+			image = new byte[rom.length / PAGE_SIZE][];
+			for (int i = 0; i < image.length; i++) {
+				image[i] = ImageCache.intern(Arrays.copyOfRange(rom, i * PAGE_SIZE, (i + 1) * PAGE_SIZE));
+			}
+			byte[][] existing = systemImages.putIfAbsent(file, image);
+			if (existing != null) {
+				image = existing;
+			}
 		}
+		return image;
+	}
 
+	/**
+	 * Reads the system image from a file.
+	 * 
+	 * @param file
+	 *            The file name that is the rom.
+	 * @return The first 0x200 bytes of the file, zero filled if it is shorter
+	 * @throws IOException
+	 *             Thrown when the file cannot be found or read.
+	 */
+	private static byte[] loadSystemFromFile(String file) throws IOException {
+		ByteBuffer rom = ByteBuffer.allocate(0x200);
+		try (FileChannel channel = FileChannel.open(Paths.get(file))) {
+			while (rom.hasRemaining()) {
+				if (channel.read(rom) < 0) {
+					break;
+				}
+			}
+		}
+		return rom.array();
+	}
+
+	/**
+	 * Points every page at either the shared system image or the shared empty
+	 * page. Nothing is copied until it is written.
+	 */
+	private void copySystem() {
+		for (int i = 0; i < pages.length; i++) {
+			pages[i] = i < system.length ? system[i] : ZERO_PAGE;
+		}
+		Arrays.fill(shared, true);
+		Arrays.fill(dirty, true);
 	}
 
 	/**
 	 * Resets the memory to the initial state and reloads the system.
 	 */
 	public void resetMemory() {
-		for (int i = 0; i < memory.length; i++) {
-			memory[i] = 0;
+		copySystem();
+		for (MemoryListener listener : listeners) {
+			listener.memoryReset();
 		}
-		try {
-			loadSystemFromFile("chip8.rom");
-		} catch (IOException e) {
+	}
+
+	/**
+	 * Writes all of memory into a buffer
+	 * 
+	 * @param buffer
+	 *            The buffer to write to
+	 */
+	public void save(ByteBuffer buffer) {
+		for (byte[] page : pages) {
+			buffer.put(page);
+		}
+	}
+
+	/**
+	 * Replaces all of memory with the contents of a buffer written by
+	 * {@link #save(ByteBuffer)}
+	 * 
+	 * @param buffer
+	 *            The buffer to read from
+	 */
+	public void load(ByteBuffer buffer) {
+		for (int i = 0; i < pages.length; i++) {
+			if (shared[i]) {
+				pages[i] = new byte[PAGE_SIZE];
+				shared[i] = false;
+			}
+			buffer.get(pages[i]);
+		}
+		Arrays.fill(dirty, true);
+		for (MemoryListener listener : listeners) {
+			listener.memoryReset();
+		}
+	}
+
+	/**
+	 * Adds a listener that is told about writes to memory
+	 * 
+	 * @param listener
+	 *            The listener to add
+	 */
+	public void addMemoryListener(MemoryListener listener) {
+		listeners = Arrays.copyOf(listeners, listeners.length + 1);
+		listeners[listeners.length - 1] = listener;
+	}
+
+	/**
+	 * Removes a listener added with {@link #addMemoryListener(MemoryListener)}
+	 * 
+	 * @param listener
+	 *            The listener to remove
+	 */
+	public void removeMemoryListener(MemoryListener listener) {
+		for (int j = 0; j < listeners.length; j++) {
+			if (listeners[j] == listener) {
+				MemoryListener[] remaining = new MemoryListener[listeners.length - 1];
+				System.arraycopy(listeners, 0, remaining, 0, j);
+				System.arraycopy(listeners, j + 1, remaining, j, remaining.length - j);
+				listeners = remaining;
+				return;
+			}
 		}
 	}
 }
@@ -0,0 +1,23 @@
+package com.tycoon177.chip8.system;
+
+/**
+ * Gets notified when the contents of memory change
+ * 
+ * @author Benjamin McHone
+ *
+ */
+public interface MemoryListener {
+
+	/**
+	 * Called after a byte of memory has been written
+	 * 
+	 * @param address
+	 *            The address that was written
+	 */
+	public void memoryChanged(int address);
+
+	/**
+	 * Called after all of memory has been reset
+	 */
+	public void memoryReset();
+}
@@ -0,0 +1,139 @@
+package com.tycoon177.chip8.system;
+
+/**
+ * The families of opcodes understood by the chip8
+ * 
+ * @author Benjamin McHone
+ *
+ */
+public enum Opcode {
+	OPCODE_00CN, OPCODE_00E0, OPCODE_00EE, OPCODE_00FB, OPCODE_00FC, OPCODE_00FE, OPCODE_00FF, OPCODE_1NNN,
+	OPCODE_2NNN, OPCODE_3XNN, OPCODE_4XNN, OPCODE_5XY0, OPCODE_6XNN, OPCODE_7XNN, OPCODE_8XY0, OPCODE_8XY1,
+	OPCODE_8XY2, OPCODE_8XY3, OPCODE_8XY4, OPCODE_8XY5, OPCODE_8XY6, OPCODE_8XY7, OPCODE_8XYE, OPCODE_9XY0,
+	OPCODE_ANNN, OPCODE_BNNN, OPCODE_CXNN, OPCODE_DXYN, OPCODE_DXY0, OPCODE_EX9E, OPCODE_EXA1, OPCODE_FX07,
+	OPCODE_FX0A, OPCODE_FX15, OPCODE_FX18, OPCODE_FX1E, OPCODE_FX29, OPCODE_FX30, OPCODE_FX33, OPCODE_FX55,
+	OPCODE_FX65, UNKNOWN;
+
+	/**
+	 * Finds the family that a raw opcode belongs to
+	 * 
+	 * @param opcode
+	 *            The 2 byte opcode
+	 * @return The family of the opcode
+	 */
+	public static Opcode decode(int opcode) {
+		opcode &= 0xffff;
+		switch ((opcode & 0xf000) >> 12) {
+			case 0x0:
+				switch (opcode & 0xFF) {
+					case 0x00E0:
+						return OPCODE_00E0;
+					case 0x00EE:
+						return OPCODE_00EE;
+					case 0x00FB:
+						return OPCODE_00FB;
+					case 0x00FC:
+						return OPCODE_00FC;
+					case 0x00FE:
+						return OPCODE_00FE;
+					case 0x00FF:
+						return OPCODE_00FF;
+					default:
+						if ((opcode & 0xF0) == 0xC0) {
+							return OPCODE_00CN;
+						}
+						return UNKNOWN;
+				}
+			case 0x1:
+				return OPCODE_1NNN;
+			case 0x2:
+				return OPCODE_2NNN;
+			case 0x3:
+				return OPCODE_3XNN;
+			case 0x4:
+				return OPCODE_4XNN;
+			case 0x5:
+				return OPCODE_5XY0;
+			case 0x6:
+				return OPCODE_6XNN;
+			case 0x7:
+				return OPCODE_7XNN;
+			case 0x8:
+				switch (opcode & 0xF) {
+					case 0x0:
+						return OPCODE_8XY0;
+					case 0x1:
+						return OPCODE_8XY1;
+					case 0x2:
+						return OPCODE_8XY2;
+					case 0x3:
+						return OPCODE_8XY3;
+					case 0x4:
+						return OPCODE_8XY4;
+					case 0x5:
+						return OPCODE_8XY5;
+					case 0x6:
+						return OPCODE_8XY6;
+					case 0x7:
+						return OPCODE_8XY7;
+					case 0xE:
+						return OPCODE_8XYE;
+					default:
+						return UNKNOWN;
+				}
+			case 0x9:
+				return OPCODE_9XY0;
+			case 0xA:
+				return OPCODE_ANNN;
+			case 0xB:
+				return OPCODE_BNNN;
+			case 0xC:
+				return OPCODE_CXNN;
+			case 0xD:
+				return (opcode & 0xf) != 0 ? OPCODE_DXYN : OPCODE_DXY0;
+			case 0xE:
+				switch (opcode & 0xff) {
+					case 0x9E:
+						return OPCODE_EX9E;
+					case 0xA1:
+						return OPCODE_EXA1;
+					default:
+						return UNKNOWN;
+				}
+			default:
+				switch (opcode & 0xFF) {
+					case 0x07:
+						return OPCODE_FX07;
+					case 0x0A:
+						return OPCODE_FX0A;
+					case 0x15:
+						return OPCODE_FX15;
+					case 0x18:
+						return OPCODE_FX18;
+					case 0x1E:
+						return OPCODE_FX1E;
+					case 0x29:
+						return OPCODE_FX29;
+					case 0x30:
+						return OPCODE_FX30;
+					case 0x33:
+						return OPCODE_FX33;
+					case 0x55:
+						return OPCODE_FX55;
+					case 0x65:
+						return OPCODE_FX65;
+					default:
+						return UNKNOWN;
+				}
+		}
+	}
+
+	/**
+	 * Gets the short name of the family, such as 8XY4
+	 * 
+	 * @return The name without the OPCODE_ prefix
+	 */
+	public String getName() {
+		return this == UNKNOWN ? name() : name().substring(7);
+	}
+}
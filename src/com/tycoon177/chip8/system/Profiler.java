@@ -0,0 +1,308 @@
+package com.tycoon177.chip8.system;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts how often each opcode family and each address is executed, and how
+ * long the instructions that draw and scroll the screen take. The counters are
+ * plain arrays only written by the emulation thread, so counting costs an
+ * increment. Other threads read them through {@link #snapshot()}, which may be
+ * a few instructions behind.
+ * 
+ * @author Benjamin McHone
+ *
+ */
+public class Profiler {
+	private static final Opcode[] OPCODES = Opcode.values();
+	private long[] opcodeCounts;
+	private long[] opcodeNanos;
+	private long[] addressCounts;
+	// Addresses wrap like memory does, the program counter can run past it
+	private int mask;
+	private ScheduledExecutorService dumper;
+
+	/**
+	 * Creates a profiler
+	 * 
+	 * @param memorySize
+	 *            The amount of memory of the computer being profiled, which
+	 *            is a power of two like the size of {@link Memory}
+	 */
+	public Profiler(int memorySize) {
+		opcodeCounts = new long[OPCODES.length];
+		opcodeNanos = new long[OPCODES.length];
+		addressCounts = new long[memorySize];
+		mask = memorySize - 1;
+	}
+
+	/**
+	 * Checks if instructions of a family are timed as well as counted. Only
+	 * those that draw or scroll the screen are, reading the clock for every
+	 * instruction would slow down the run being measured.
+	 * 
+	 * @param type
+	 *            The opcode family
+	 * @return Whether it is timed
+	 */
+	public static boolean isTimed(Opcode type) {
+		switch (type) {
+			case OPCODE_00CN:
+			case OPCODE_00E0:
+			case OPCODE_00FB:
+			case OPCODE_00FC:
+			case OPCODE_DXYN:
+			case OPCODE_DXY0:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * Counts an executed instruction
+	 * 
+	 * @param type
+	 *            The opcode family
+	 * @param address
+	 *            The address it was executed from
+	 */
+	void count(Opcode type, int address) {
+		opcodeCounts[type.ordinal()]++;
+		addressCounts[address & mask]++;
+	}
+
+	/**
+	 * Counts an executed instruction that was timed
+	 * 
+	 * @param type
+	 *            The opcode family
+	 * @param address
+	 *            The address it was executed from
+	 * @param nanos
+	 *            How long it took
+	 */
+	void count(Opcode type, int address, long nanos) {
+		opcodeCounts[type.ordinal()]++;
+		opcodeNanos[type.ordinal()] += nanos;
+		addressCounts[address & mask]++;
+	}
+
+	/**
+	 * Sets every counter back to zero. Should be called from the emulation
+	 * thread or while the computer is paused.
+	 */
+	public void reset() {
+		Arrays.fill(opcodeCounts, 0);
+		Arrays.fill(opcodeNanos, 0);
+		Arrays.fill(addressCounts, 0);
+	}
+
+	/**
+	 * Copies the counters
+	 * 
+	 * @return The copy
+	 */
+	public Snapshot snapshot() {
+		return new Snapshot(opcodeCounts.clone(), opcodeNanos.clone(), addressCounts.clone());
+	}
+
+	/**
+	 * Starts printing a snapshot every so often on a background thread
+	 * 
+	 * @param out
+	 *            Where to print to
+	 * @param periodSeconds
+	 *            The seconds between each snapshot
+	 */
+	public synchronized void startDump(PrintStream out, long periodSeconds) {
+		stopDump();
+		dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "Profile dump");
+			thread.setDaemon(true);
+			return thread;
+		});
+		dumper.scheduleAtFixedRate(() -> out.println(snapshot()), periodSeconds, periodSeconds, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Stops printing snapshots
+	 */
+	public synchronized void stopDump() {
+		if (dumper != null) {
+			dumper.shutdownNow();
+			dumper = null;
+		}
+	}
+
+	/**
+	 * The counters of a profiler at one point in time
+	 * 
+	 * @author Benjamin McHone
+	 *
+	 */
+	public static class Snapshot {
+		/**
+		 * The most addresses and opcodes listed by {@link #toString()}
+		 */
+		public static final int TOP = 10;
+		private long[] opcodeCounts;
+		private long[] opcodeNanos;
+		private long[] addressCounts;
+
+		/**
+		 * Creates a snapshot
+		 * 
+		 * @param opcodeCounts
+		 *            The executions of each opcode family, by ordinal
+		 * @param opcodeNanos
+		 *            The time spent in each timed opcode family, by ordinal
+		 * @param addressCounts
+		 *            The executions from each address
+		 */
+		Snapshot(long[] opcodeCounts, long[] opcodeNanos, long[] addressCounts) {
+			this.opcodeCounts = opcodeCounts;
+			this.opcodeNanos = opcodeNanos;
+			this.addressCounts = addressCounts;
+		}
+
+		/**
+		 * Gets how many instructions of a family were executed
+		 * 
+		 * @param type
+		 *            The opcode family
+		 * @return The executions
+		 */
+		public long getCount(Opcode type) {
+			return opcodeCounts[type.ordinal()];
+		}
+
+		/**
+		 * Gets how long the instructions of a family took. Only families that
+		 * are {@link Profiler#isTimed(Opcode) timed} have a time.
+		 * 
+		 * @param type
+		 *            The opcode family
+		 * @return The time in nanoseconds
+		 */
+		public long getNanos(Opcode type) {
+			return opcodeNanos[type.ordinal()];
+		}
+
+		/**
+		 * Gets how many instructions were executed from an address
+		 * 
+		 * @param address
+		 *            The address
+		 * @return The executions
+		 */
+		public long getCount(int address) {
+			return addressCounts[address];
+		}
+
+		/**
+		 * Gets how many instructions were executed in total
+		 * 
+		 * @return The executions
+		 */
+		public long getInstructions() {
+			long total = 0;
+			for (long count : opcodeCounts) {
+				total += count;
+			}
+			return total;
+		}
+
+		/**
+		 * Gets the time spent drawing sprites
+		 * 
+		 * @return The time in nanoseconds
+		 */
+		public long getDrawNanos() {
+			return getNanos(Opcode.OPCODE_DXYN) + getNanos(Opcode.OPCODE_DXY0);
+		}
+
+		/**
+		 * Gets the time spent scrolling and clearing the screen
+		 * 
+		 * @return The time in nanoseconds
+		 */
+		public long getScrollNanos() {
+			return getNanos(Opcode.OPCODE_00CN) + getNanos(Opcode.OPCODE_00FB) + getNanos(Opcode.OPCODE_00FC)
+					+ getNanos(Opcode.OPCODE_00E0);
+		}
+
+		/**
+		 * Gets the addresses executed most often, most executed first
+		 * 
+		 * @param amount
+		 *            The most addresses to return
+		 * @return The addresses
+		 */
+		public int[] getHotAddresses(int amount) {
+			return top(addressCounts, amount);
+		}
+
+		/**
+		 * Gets the opcode families executed most often, most executed first
+		 * 
+		 * @param amount
+		 *            The most families to return
+		 * @return The families
+		 */
+		public Opcode[] getHotOpcodes(int amount) {
+			int[] top = top(opcodeCounts, amount);
+			Opcode[] types = new Opcode[top.length];
+			for (int i = 0; i < top.length; i++) {
+				types[i] = OPCODES[top[i]];
+			}
+			return types;
+		}
+
+		/**
+		 * Finds the indexes of the largest non zero counts
+		 * 
+		 * @param counts
+		 *            The counts
+		 * @param amount
+		 *            The most indexes to return
+		 * @return The indexes, largest count first
+		 */
+		private static int[] top(long[] counts, int amount) {
+			int[] top = new int[amount];
+			int found = 0;
+			for (int i = 0; i < counts.length; i++) {
+				if (counts[i] == 0 || (found == amount && counts[i] <= counts[top[found - 1]])) {
+					continue;
+				}
+				int place = found < amount ? found++ : amount - 1;
+				while (place > 0 && counts[top[place - 1]] < counts[i]) {
+					top[place] = top[place - 1];
+					place--;
+				}
+				top[place] = i;
+			}
+			return Arrays.copyOf(top, found);
+		}
+
+		@Override
+		public String toString() {
+			long total = getInstructions();
+			StringBuilder out = new StringBuilder();
+			out.append(String.format("%d instructions, draw %.1fms, scroll %.1fms%n", total, getDrawNanos() / 1e6,
+					getScrollNanos() / 1e6));
+			for (Opcode type : getHotOpcodes(TOP)) {
+				out.append(String.format("  %-6s %12d %5.1f%%%n", type.getName(), getCount(type),
+						getCount(type) * 100.0 / total));
+			}
+			for (int address : getHotAddresses(TOP)) {
+				out.append(String.format("  0x%03x  %12d %5.1f%%%n", address, getCount(address),
+						getCount(address) * 100.0 / total));
+			}
+			return out.toString();
+		}
+	}
+}
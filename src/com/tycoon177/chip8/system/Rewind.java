@@ -0,0 +1,271 @@
+package com.tycoon177.chip8.system;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Records the state of a computer once a frame so that it can be stepped
+ * backwards. Each frame only keeps what changed from the frame before it: the
+ * old values of the bytes of memory and longs of the screen that changed, and
+ * the registers. Frames are kept in a ring buffer bounded by both a number of
+ * frames and a number of bytes, the oldest frames are dropped first.
+ * 
+ * @author Benjamin McHone
+ *
+ */
+public class Rewind {
+	private static final byte WORD_DELTAS = 0;
+	private static final byte WHOLE_SCREEN = 1;
+	private Computer computer;
+	private Memory ram;
+	private Display display;
+	private byte[][] frames;
+	private int newest;
+	private int count;
+	private long bytesUsed;
+	private long maxBytes;
+	// The state as of the last recorded frame, what the next frame is
+	// compared against
+	private byte[] lastRam;
+	private long[] lastScreen;
+	private int lastWidth, lastHeight;
+	private byte[] lastState;
+	private boolean started;
+	// Scratch space reused for every frame
+	private ByteBuffer state;
+	private ByteBuffer scratch;
+
+	/**
+	 * Creates a rewind buffer for a computer
+	 * 
+	 * @param computer
+	 *            The computer to record
+	 * @param ram
+	 *            The memory of the computer
+	 * @param display
+	 *            The display of the computer
+	 * @param maxFrames
+	 *            The most frames to keep
+	 * @param maxBytes
+	 *            The most bytes the recorded frames may take up
+	 */
+	Rewind(Computer computer, Memory ram, Display display, int maxFrames, long maxBytes) {
+		this.computer = computer;
+		this.ram = ram;
+		this.display = display;
+		this.maxBytes = maxBytes;
+		frames = new byte[maxFrames][];
+		lastRam = new byte[ram.getSize()];
+		lastState = new byte[Computer.STATE_SIZE];
+		state = ByteBuffer.allocate(Computer.STATE_SIZE);
+		// Enough for every byte of memory and every long of a high resolution
+		// screen changing in the same frame
+		scratch = ByteBuffer.allocate(Computer.STATE_SIZE + 4 + ram.getSize() * 3 + 5 + 128 * 64 / 64 * 10);
+	}
+
+	/**
+	 * Records the state at the end of a frame
+	 */
+	public void record() {
+		if (!started) {
+			takeBaseline();
+			return;
+		}
+		scratch.clear();
+		scratch.put(lastState);
+
+		// Memory, only the pages written since the last frame can differ
+		boolean[] dirty = ram.getDirtyPages();
+		int countAt = scratch.position();
+		scratch.putInt(0);
+		int changed = 0;
+		for (int page = 0; page < dirty.length; page++) {
+			if (!dirty[page]) {
+				continue;
+			}
+			int end = (page + 1) * Memory.PAGE_SIZE;
+			for (int address = page * Memory.PAGE_SIZE; address < end; address++) {
+				byte value = (byte) ram.getMemory(address);
+				if (value != lastRam[address]) {
+					scratch.putShort((short) address);
+					scratch.put(lastRam[address]);
+					lastRam[address] = value;
+					changed++;
+				}
+			}
+		}
+		scratch.putInt(countAt, changed);
+		ram.clearDirtyPages();
+
+		// Screen
+		long[] screen = display.getScreen();
+		if (screen.length == lastScreen.length) {
+			scratch.put(WORD_DELTAS);
+			countAt = scratch.position();
+			scratch.putInt(0);
+			changed = 0;
+			for (int i = 0; i < screen.length; i++) {
+				if (screen[i] != lastScreen[i]) {
+					scratch.putShort((short) i);
+					scratch.putLong(lastScreen[i]);
+					lastScreen[i] = screen[i];
+					changed++;
+				}
+			}
+			scratch.putInt(countAt, changed);
+		} else {
+			// The resolution changed, keep the whole old screen
+			scratch.put(WHOLE_SCREEN);
+			scratch.putShort((short) lastWidth);
+			scratch.putShort((short) lastHeight);
+			for (long word : lastScreen) {
+				scratch.putLong(word);
+			}
+			lastScreen = screen.clone();
+			lastWidth = display.getWidth();
+			lastHeight = display.getHeight();
+		}
+
+		state.clear();
+		computer.saveState(state);
+		System.arraycopy(state.array(), 0, lastState, 0, lastState.length);
+		push(Arrays.copyOf(scratch.array(), scratch.position()));
+	}
+
+	/**
+	 * Steps the computer back to the previous recorded frame
+	 * 
+	 * @return Whether there was a frame to step back to
+	 */
+	public boolean stepBack() {
+		if (count == 0) {
+			return false;
+		}
+		byte[] frame = frames[newest];
+		frames[newest] = null;
+		newest = (newest - 1 + frames.length) % frames.length;
+		count--;
+		bytesUsed -= frame.length;
+
+		rollBack();
+		ByteBuffer buffer = ByteBuffer.wrap(frame);
+		buffer.get(lastState);
+		int changed = buffer.getInt();
+		for (int i = 0; i < changed; i++) {
+			int address = buffer.getShort() & 0xffff;
+			byte value = buffer.get();
+			lastRam[address] = value;
+			ram.setMemory(address, value);
+		}
+		ram.clearDirtyPages();
+		if (buffer.get() == WORD_DELTAS) {
+			changed = buffer.getInt();
+			for (int i = 0; i < changed; i++) {
+				int index = buffer.getShort();
+				long value = buffer.getLong();
+				lastScreen[index] = value;
+				display.setWord(index, value);
+			}
+			display.changed();
+		} else {
+			lastWidth = buffer.getShort();
+			lastHeight = buffer.getShort();
+			lastScreen = new long[lastWidth / 64 * lastHeight];
+			for (int i = 0; i < lastScreen.length; i++) {
+				lastScreen[i] = buffer.getLong();
+			}
+			display.setScreen(lastWidth, lastHeight, lastScreen);
+		}
+		computer.loadState(ByteBuffer.wrap(lastState));
+		return true;
+	}
+
+	/**
+	 * Undoes anything that changed since the last frame was recorded, such as
+	 * when the computer was stopped part way through a frame.
+	 */
+	private void rollBack() {
+		boolean[] dirty = ram.getDirtyPages();
+		for (int page = 0; page < dirty.length; page++) {
+			if (!dirty[page]) {
+				continue;
+			}
+			int end = (page + 1) * Memory.PAGE_SIZE;
+			for (int address = page * Memory.PAGE_SIZE; address < end; address++) {
+				if ((byte) ram.getMemory(address) != lastRam[address]) {
+					ram.setMemory(address, lastRam[address]);
+				}
+			}
+		}
+		ram.clearDirtyPages();
+		display.setScreen(lastWidth, lastHeight, lastScreen);
+	}
+
+	/**
+	 * Gets the amount of frames that can be stepped back
+	 * 
+	 * @return The recorded frames
+	 */
+	public int getFrameCount() {
+		return count;
+	}
+
+	/**
+	 * Gets the amount of bytes taken up by the recorded frames
+	 * 
+	 * @return The bytes used
+	 */
+	public long getBytesUsed() {
+		return bytesUsed;
+	}
+
+	/**
+	 * Throws away every recorded frame. The next frame recorded starts over.
+	 */
+	public void clear() {
+		Arrays.fill(frames, null);
+		count = 0;
+		bytesUsed = 0;
+		started = false;
+	}
+
+	/**
+	 * Takes a full copy of the current state to compare the next frame to
+	 */
+	private void takeBaseline() {
+		for (int address = 0; address < lastRam.length; address++) {
+			lastRam[address] = (byte) ram.getMemory(address);
+		}
+		ram.clearDirtyPages();
+		lastScreen = display.getScreen().clone();
+		lastWidth = display.getWidth();
+		lastHeight = display.getHeight();
+		state.clear();
+		computer.saveState(state);
+		System.arraycopy(state.array(), 0, lastState, 0, lastState.length);
+		started = true;
+	}
+
+	/**
+	 * Adds a frame, dropping the oldest frames if there is not enough room
+	 * 
+	 * @param frame
+	 *            The frame to add
+	 */
+	private void push(byte[] frame) {
+		newest = (newest + 1) % frames.length;
+		if (frames[newest] != null) {
+			bytesUsed -= frames[newest].length;
+			count--;
+		}
+		frames[newest] = frame;
+		count++;
+		bytesUsed += frame.length;
+		while (bytesUsed > maxBytes && count > 1) {
+			int oldest = (newest - count + 1 + frames.length) % frames.length;
+			bytesUsed -= frames[oldest].length;
+			frames[oldest] = null;
+			count--;
+		}
+	}
+}
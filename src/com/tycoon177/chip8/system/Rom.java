@@ -1,57 +1,70 @@
 package com.tycoon177.chip8.system;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.util.zip.DataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 /**
- * Represents a Rom file
+ * Represents a Rom file. The bytes are read in one go and shared with every
+ * other rom with the same content.
  * 
  * @author Benjamin McHone
  *
  */
 public class Rom {
-	private int[] romData;
-	private int length;
+	private byte[] romData;
+	private String hash;
 
 	/**
 	 * Constructs a rom from a file
 	 * 
 	 * @param fileName
 	 *            The file name of the rom
-	 * @throws DataFormatException
-	 *             Thrown when there are an odd number of bytes.
 	 * @throws IOException
 	 *             Thrown when the file cannot be read.
 	 */
-	public Rom(String fileName) throws DataFormatException, IOException {
+	public Rom(String fileName) throws IOException {
 		File file = new File(fileName);
 		if (!file.exists()) {
 			throw new FileNotFoundException("ROM FILE NOT FOUND");
 		}
-		FileInputStream input = new FileInputStream(file);
-		int index = 0;
-		length = (int) file.length();
-		romData = new int[length];
-		while (input.available() > 0) {
-			if (index >= romData.length) {
-				input.close();
-				throw new IndexOutOfBoundsException("Not enough space allocated for rom data");
-			}
-			romData[index++] = input.read();
-		}
-		input.close();
+		romData = ImageCache.intern(Files.readAllBytes(file.toPath()));
+	}
+
+	/**
+	 * Constructs a rom from bytes already in memory
+	 * 
+	 * @param data
+	 *            The bytes of the rom, which are copied
+	 */
+	public Rom(byte[] data) {
+		romData = ImageCache.intern(data.clone());
 	}
 
 	/**
 	 * Returns the rom data
 	 * 
-	 * @return The rom data in an integer array
+	 * @return A copy of the rom data in an integer array
 	 */
 	public int[] getRom() {
-		return romData;
+		int[] data = new int[romData.length];
+		for (int i = 0; i < data.length; i++) {
+			data[i] = romData[i] & 0xff;
+		}
+		return data;
+	}
+
+	/**
+	 * Gets the rom data without copying it
+	 * 
+	 * @return A read only view of the rom data
+	 */
+	public ByteBuffer getData() {
+		return ByteBuffer.wrap(romData).asReadOnlyBuffer();
 	}
 
 	/**
@@ -60,6 +73,28 @@ public class Rom {
 	 * @return The amount of bytes that the rom is.
 	 */
 	public int getLength() {
-		return length;
+		return romData.length;
+	}
+
+	/**
+	 * Gets the SHA-256 hash of the rom, which is the same for every copy of
+	 * the same rom wherever it was loaded from
+	 * 
+	 * @return The hash in hexadecimal
+	 */
+	public String getHash() {
+		if (hash == null) {
+			try {
+				StringBuilder hex = new StringBuilder();
+				for (byte b : MessageDigest.getInstance("SHA-256").digest(romData)) {
+					hex.append(String.format("%02x", b));
+				}
+				hash = hex.toString();
+			} catch (NoSuchAlgorithmException e) {
+				// Every JVM has to provide SHA-256
+				throw new IllegalStateException(e);
+			}
+		}
+		return hash;
 	}
 }
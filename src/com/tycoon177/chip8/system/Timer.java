@@ -1,24 +1,23 @@
 package com.tycoon177.chip8.system;
 
 /**
- * Symbolizes a timer that counts down at 60 Hz
+ * Symbolizes a timer that counts down at 60 Hz. The timer is driven by the
+ * virtual clock of the computer rather than the wall clock, so it counts down
+ * the same no matter how fast the emulation is running.
  * 
  * @author Benjamin McHone
  *
  */
 public class Timer {
 	private int value;
-	private long time;
 
 	/**
-	 * Checks if the time has been over a second and takes one from the timer
+	 * Takes one from the timer if it is above zero. Called once per 60 Hz
+	 * frame.
 	 */
-	public void updateTimer() {
-		if ((System.currentTimeMillis() - time) / 60.0 >= 1) {
-			if (value > 0) {
-				value--;
-			}
-			time = System.currentTimeMillis();
+	public void tick() {
+		if (value > 0) {
+			value--;
 		}
 	}
 
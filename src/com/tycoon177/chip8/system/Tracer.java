@@ -0,0 +1,272 @@
+package com.tycoon177.chip8.system;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Traces every instruction a computer executes into a file. Records are
+ * written by the emulation thread into a ring buffer outside of the heap, and
+ * a background thread copies them into a memory mapped file, so the emulation
+ * thread never waits on the disk unless the ring is full.
+ * <p>
+ * The file starts with a header of {@link #HEADER_SIZE} bytes: the magic
+ * number, the record size and the amount of records. Each record is
+ * {@link #RECORD_SIZE} bytes: the cycle, the program counter, the opcode, I,
+ * a mask of the registers the instruction changed, and V0-VF afterwards.
+ * 
+ * @author Benjamin McHone
+ *
+ */
+public class Tracer {
+	/**
+	 * Marks the start of a trace file, "C8T" and the format version
+	 */
+	public static final int MAGIC = 0x43385401;
+	/**
+	 * The bytes in a single record
+	 */
+	public static final int RECORD_SIZE = 32;
+	/**
+	 * The bytes before the first record
+	 */
+	public static final int HEADER_SIZE = 16;
+	// How much of the file is mapped at a time
+	private static final int WINDOW_SIZE = 1 << 20;
+	private ByteBuffer ring;
+	// The flush thread's view of the ring
+	private ByteBuffer source;
+	private int capacity;
+	private int[] lastRegisters;
+	// Records written by the emulation thread, only it writes this
+	private volatile long head;
+	// Records copied to the file, only the flush thread writes this
+	private volatile long tail;
+	private volatile boolean open;
+	// Set by the flush thread when the file could not be written
+	private volatile boolean failed;
+	private volatile Thread producer;
+	private Thread flusher;
+	private FileChannel channel;
+	private MappedByteBuffer window;
+	private long windowStart;
+	private IOException failure;
+
+	/**
+	 * Creates a trace file and starts the thread that writes to it
+	 * 
+	 * @param file
+	 *            The file to write
+	 * @param capacity
+	 *            The amount of records the ring buffer holds, a power of two
+	 * @throws IOException
+	 *             Thrown when the file cannot be created
+	 */
+	public Tracer(File file, int capacity) throws IOException {
+		if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+			throw new IllegalArgumentException("The capacity must be a power of two.");
+		}
+		this.capacity = capacity;
+		ring = ByteBuffer.allocateDirect(capacity * RECORD_SIZE);
+		source = ring.duplicate();
+		lastRegisters = new int[16];
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		windowStart = 0;
+		window = channel.map(MapMode.READ_WRITE, 0, WINDOW_SIZE);
+		window.putInt(MAGIC);
+		window.putInt(RECORD_SIZE);
+		window.putLong(0);
+		open = true;
+		flusher = new Thread(this::flushLoop, "Trace writer");
+		flusher.setDaemon(true);
+		flusher.start();
+	}
+
+	/**
+	 * Adds the record of an executed instruction. Only one thread may trace.
+	 * 
+	 * @param cycle
+	 *            The cycle the instruction ran on
+	 * @param programCounter
+	 *            The address of the instruction
+	 * @param opcode
+	 *            The instruction
+	 * @param i
+	 *            I after the instruction
+	 * @param registers
+	 *            V0-VF after the instruction
+	 */
+	public void trace(long cycle, int programCounter, int opcode, int i, int[] registers) {
+		long position = head;
+		while (position - tail >= capacity) {
+			if (failed) {
+				// Keep going without a trace
+				return;
+			}
+			// The ring is full, wait for the flush thread to catch up
+			producer = Thread.currentThread();
+			LockSupport.unpark(flusher);
+			LockSupport.parkNanos(10000);
+		}
+		int offset = (int) (position & (capacity - 1)) * RECORD_SIZE;
+		int changed = 0;
+		for (int r = 0; r < 16; r++) {
+			if (registers[r] != lastRegisters[r]) {
+				changed |= 1 << r;
+				lastRegisters[r] = registers[r];
+			}
+		}
+		ring.putLong(offset, cycle);
+		ring.putShort(offset + 8, (short) programCounter);
+		ring.putShort(offset + 10, (short) opcode);
+		ring.putShort(offset + 12, (short) i);
+		ring.putShort(offset + 14, (short) changed);
+		for (int r = 0; r < 16; r++) {
+			ring.put(offset + 16 + r, (byte) registers[r]);
+		}
+		head = position + 1;
+	}
+
+	/**
+	 * Copies records from the ring buffer into the file until the tracer is
+	 * closed and every record has been copied
+	 */
+	private void flushLoop() {
+		try {
+			while (open || tail < head) {
+				long end = head;
+				if (tail == end) {
+					LockSupport.parkNanos(1000000);
+					continue;
+				}
+				write(tail, end);
+				tail = end;
+				Thread waiting = producer;
+				if (waiting != null) {
+					LockSupport.unpark(waiting);
+				}
+			}
+		} catch (IOException e) {
+			failure = e;
+			failed = true;
+			Thread waiting = producer;
+			if (waiting != null) {
+				LockSupport.unpark(waiting);
+			}
+		}
+	}
+
+	/**
+	 * Copies records to the end of the file, as many at a time as the ends of
+	 * the ring and of the mapped part of the file allow. The next part of the
+	 * file is mapped when the current part is full.
+	 * 
+	 * @param from
+	 *            The first record to copy
+	 * @param to
+	 *            The record after the last to copy
+	 * @throws IOException
+	 *             Thrown when the file cannot be mapped
+	 */
+	private void write(long from, long to) throws IOException {
+		while (from < to) {
+			int index = (int) (from & (capacity - 1));
+			int records = (int) Math.min(to - from, capacity - index);
+			records = Math.min(records, window.remaining() / RECORD_SIZE);
+			if (records == 0) {
+				windowStart += window.position();
+				window = channel.map(MapMode.READ_WRITE, windowStart, WINDOW_SIZE);
+				continue;
+			}
+			source.limit((index + records) * RECORD_SIZE).position(index * RECORD_SIZE);
+			window.put(source);
+			from += records;
+		}
+	}
+
+	/**
+	 * Gets the amount of records traced
+	 * 
+	 * @return The record count
+	 */
+	public long getRecordCount() {
+		return head;
+	}
+
+	/**
+	 * Waits for every record to be written, then writes the record count into
+	 * the header, cuts off the unused end of the last mapped part and closes
+	 * the file
+	 * 
+	 * @throws IOException
+	 *             Thrown when the file could not be written
+	 */
+	public void close() throws IOException {
+		if (!open) {
+			return;
+		}
+		open = false;
+		LockSupport.unpark(flusher);
+		try {
+			flusher.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (failure != null) {
+			channel.close();
+			throw failure;
+		}
+		window.force();
+		ByteBuffer count = ByteBuffer.allocate(8);
+		// Records traced after the writer stopped are not in the file
+		count.putLong(0, tail);
+		channel.write(count, 8);
+		window = null;
+		channel.truncate(HEADER_SIZE + tail * RECORD_SIZE);
+		channel.close();
+	}
+
+	/**
+	 * Prints a trace file as text, one instruction per line
+	 * 
+	 * @param file
+	 *            The trace file
+	 * @param out
+	 *            Where to print to
+	 * @throws IOException
+	 *             Thrown when the file cannot be read or is not a trace
+	 */
+	public static void dump(File file, PrintStream out) throws IOException {
+		try (FileChannel input = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = input.map(MapMode.READ_ONLY, 0, input.size());
+			if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != RECORD_SIZE) {
+				throw new IOException("Not a trace file: " + file);
+			}
+			long count = buffer.getLong();
+			StringBuilder line = new StringBuilder();
+			for (long record = 0; record < count; record++) {
+				long cycle = buffer.getLong();
+				int programCounter = buffer.getShort() & 0xffff;
+				int opcode = buffer.getShort() & 0xffff;
+				int i = buffer.getShort() & 0xffff;
+				int changed = buffer.getShort() & 0xffff;
+				line.setLength(0);
+				line.append(String.format("%10d %03x %04x I=%03x", cycle, programCounter, opcode, i));
+				for (int r = 0; r < 16; r++) {
+					int value = buffer.get() & 0xff;
+					if ((changed & (1 << r)) != 0) {
+						line.append(String.format(" V%X=%02x", r, value));
+					}
+				}
+				out.println(line);
+			}
+		}
+	}
+}
@@ -30,14 +30,25 @@ public class DebugPanel extends JPanel {
 		JButton play = new JButton("Play");
 		JButton step = new JButton("Step");
 		JButton stop = new JButton("Stop");
+		JButton back = new JButton("Back");
+		JButton resume = new JButton("Resume");
 		play.addActionListener((l) -> computer.playRom());
 		play.setFocusable(false);
 		stop.addActionListener((l) -> computer.stop());
 		stop.setFocusable(false);
 		step.addActionListener((l) -> computer.emulationCycle());
 		step.setFocusable(false);
+		back.addActionListener((l) -> {
+			computer.pause();
+			computer.stepBack();
+		});
+		back.setFocusable(false);
+		resume.addActionListener((l) -> computer.resume());
+		resume.setFocusable(false);
 		add(play);
 		add(step);
 		add(stop);
+		add(back);
+		add(resume);
 	}
 }
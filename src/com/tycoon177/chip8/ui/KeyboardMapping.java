@@ -0,0 +1,52 @@
+package com.tycoon177.chip8.ui;
+
+import java.awt.event.KeyEvent;
+import java.util.HashMap;
+
+/**
+ * Maps the keys of a normal keyboard onto the chip8 keypad
+ * 
+ * @author Benjamin McHone
+ *
+ */
+public class KeyboardMapping {
+	private HashMap<Integer, Integer> keyboardLookup;
+
+	/**
+	 * Constructs the standard mapping. 1-4, q-r, a-f and z-v.
+	 */
+	public KeyboardMapping() {
+		keyboardLookup = new HashMap<>();
+		keyboardLookup.put(KeyEvent.VK_1, 0x1);
+		keyboardLookup.put(KeyEvent.VK_2, 0x2);
+		keyboardLookup.put(KeyEvent.VK_3, 0x3);
+		keyboardLookup.put(KeyEvent.VK_4, 0xC);
+		keyboardLookup.put(KeyEvent.VK_Q, 0x4);
+		keyboardLookup.put(KeyEvent.VK_W, 0x5);
+		keyboardLookup.put(KeyEvent.VK_E, 0x6);
+		keyboardLookup.put(KeyEvent.VK_R, 0xD);
+		keyboardLookup.put(KeyEvent.VK_A, 0x7);
+		keyboardLookup.put(KeyEvent.VK_S, 0x8);
+		keyboardLookup.put(KeyEvent.VK_D, 0x9);
+		keyboardLookup.put(KeyEvent.VK_F, 0xE);
+		keyboardLookup.put(KeyEvent.VK_Z, 0xA);
+		keyboardLookup.put(KeyEvent.VK_X, 0x0);
+		keyboardLookup.put(KeyEvent.VK_C, 0xB);
+		keyboardLookup.put(KeyEvent.VK_V, 0xF);
+	}
+
+	/**
+	 * Gets the key mapping of a normal keyboard to the chip8 keyboard
+	 * 
+	 * @param keycode
+	 *            The keyboard keycode
+	 * @return The chip8 keyboard equivalent
+	 */
+	public int standardKeyboardToHex(int keycode) {
+		if (keyboardLookup.containsKey((Integer) keycode)) {
+			return keyboardLookup.get(keycode);
+
+		}
+		return -1;
+	}
+}
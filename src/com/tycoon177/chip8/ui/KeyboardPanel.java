@@ -7,7 +7,7 @@ import java.awt.event.ItemListener;
 import javax.swing.JPanel;
 import javax.swing.JToggleButton;
 
-import com.tycoon177.chip8.system.Keyboard;
+import com.tycoon177.chip8.system.KeyInput;
 
 public class KeyboardPanel extends JPanel {
 
@@ -17,7 +17,7 @@ public class KeyboardPanel extends JPanel {
 	private static final long serialVersionUID = 8601869046441324384L;
 	private JToggleButton[] buttons;
 
-	public KeyboardPanel(Keyboard keyboard) {
+	public KeyboardPanel(KeyInput keyboard) {
 		super(new GridLayout(4, 4, 2, 2));
 		buttons = new JToggleButton[16];
 		for (int i = 0; i < buttons.length; i++) {
@@ -0,0 +1,158 @@
+package com.tycoon177.chip8.ui;
+
+import java.awt.BorderLayout;
+import java.awt.Font;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.io.File;
+import java.io.IOException;
+
+import javax.swing.DefaultListModel;
+import javax.swing.JButton;
+import javax.swing.JComboBox;
+import javax.swing.JDialog;
+import javax.swing.JFileChooser;
+import javax.swing.JFrame;
+import javax.swing.JList;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.ListSelectionModel;
+
+import com.tycoon177.chip8.library.Platform;
+import com.tycoon177.chip8.library.RomCatalog;
+
+/**
+ * Lists the roms in a directory from its catalog so that one can be picked
+ * without opening every file, optionally only those for one platform.
+ * 
+ * @author Benjamin McHone
+ *
+ */
+public class LibraryDialog extends JDialog {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 4417365880520368641L;
+	private static final String ALL = "All platforms";
+	private RomCatalog catalog;
+	private JComboBox<Object> platforms;
+	private DefaultListModel<RomCatalog.Entry> model;
+	private JList<RomCatalog.Entry> list;
+	private RomCatalog.Entry chosen;
+
+	/**
+	 * Creates the dialog
+	 * 
+	 * @param owner
+	 *            The window that owns the dialog
+	 * @param directory
+	 *            The directory to list first
+	 */
+	public LibraryDialog(JFrame owner, File directory) {
+		super(owner, "Rom Library", true);
+		platforms = new JComboBox<>(new Object[] { ALL, Platform.CHIP8, Platform.SCHIP });
+		platforms.addActionListener(e -> refresh());
+		JButton browse = new JButton("Directory...");
+		browse.addActionListener(e -> chooseDirectory());
+		JPanel top = new JPanel();
+		top.add(browse);
+		top.add(platforms);
+		model = new DefaultListModel<>();
+		list = new JList<>(model);
+		list.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+		list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		list.setVisibleRowCount(20);
+		list.addMouseListener(new MouseAdapter() {
+			@Override
+			public void mouseClicked(MouseEvent e) {
+				if (e.getClickCount() == 2) {
+					choose();
+				}
+			}
+		});
+		JButton load = new JButton("Load");
+		load.addActionListener(e -> choose());
+		JPanel bottom = new JPanel();
+		bottom.add(load);
+		setLayout(new BorderLayout(5, 5));
+		add(top, BorderLayout.NORTH);
+		add(new JScrollPane(list), BorderLayout.CENTER);
+		add(bottom, BorderLayout.SOUTH);
+		open(directory);
+		pack();
+		setLocationRelativeTo(owner);
+	}
+
+	/**
+	 * Opens the catalog of a directory and lists its roms
+	 * 
+	 * @param directory
+	 *            The directory
+	 */
+	private void open(File directory) {
+		try {
+			catalog = new RomCatalog(directory);
+			setTitle("Rom Library - " + directory.getAbsolutePath());
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		refresh();
+	}
+
+	/**
+	 * Lists the roms of the catalog that match the chosen platform
+	 */
+	private void refresh() {
+		model.clear();
+		if (catalog == null) {
+			return;
+		}
+		Object platform = platforms.getSelectedItem();
+		for (RomCatalog.Entry entry : catalog.find(entry -> platform == ALL || entry.getPlatform() == platform)) {
+			model.addElement(entry);
+		}
+	}
+
+	/**
+	 * Opens a JFileChooser so that another directory can be listed
+	 */
+	private void chooseDirectory() {
+		JFileChooser chooser = new JFileChooser();
+		chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+		if (catalog != null) {
+			chooser.setCurrentDirectory(catalog.getDirectory());
+		}
+		if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+			open(chooser.getSelectedFile());
+		}
+	}
+
+	/**
+	 * Closes the dialog with the selected rom as the choice
+	 */
+	private void choose() {
+		chosen = list.getSelectedValue();
+		if (chosen != null) {
+			setVisible(false);
+		}
+	}
+
+	/**
+	 * Gets the rom that was chosen
+	 * 
+	 * @return The chosen rom, or null if the dialog was closed without one
+	 */
+	public RomCatalog.Entry getChosen() {
+		return chosen;
+	}
+
+	/**
+	 * Gets the directory that was listed last
+	 * 
+	 * @return The directory
+	 */
+	public File getDirectory() {
+		return catalog == null ? null : catalog.getDirectory();
+	}
+}
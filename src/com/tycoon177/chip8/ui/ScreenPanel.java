@@ -0,0 +1,112 @@
+package com.tycoon177.chip8.ui;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+import javax.swing.JComponent;
+
+import com.tycoon177.chip8.system.DisplayListener;
+import com.tycoon177.chip8.system.FrameBuffer;
+import com.tycoon177.chip8.system.FrameExchange;
+
+/**
+ * Shows the frames published by a chip8 display in Swing. The pixels are kept
+ * in an image at the resolution of the frame, only the rows that changed since
+ * the last paint are written to it, and it is scaled onto the panel in one
+ * draw.
+ * 
+ * @author Benjamin McHone
+ *
+ */
+public class ScreenPanel extends JComponent implements DisplayListener {
+	private static final long serialVersionUID = 2590723775104624335L;
+	private static final int ON = 0xffffff;
+	private static final int OFF = 0x000000;
+	private FrameExchange frames;
+	private BufferedImage image;
+	private int[] pixels;
+	// The packed rows that are in the image
+	private long[] shown;
+
+	/**
+	 * Creates a panel showing the newest frame of an exchange
+	 * 
+	 * @param frames
+	 *            The exchange to take frames from
+	 */
+	public ScreenPanel(FrameExchange frames) {
+		this.frames = frames;
+		FrameBuffer screen = frames.acquire();
+		setPreferredSize(new Dimension(screen.getWidth() * 10, screen.getHeight() * 10));
+		setOpaque(true);
+	}
+
+	@Override
+	public void displayChanged() {
+		repaint();
+	}
+
+	/**
+	 * Writes the rows of a frame that changed since the last update into the
+	 * image, creating a new image when the resolution changed
+	 * 
+	 * @param screen
+	 *            The frame to show
+	 */
+	private void updateImage(FrameBuffer screen) {
+		int width = screen.getWidth();
+		int height = screen.getHeight();
+		int wordsPerRow = screen.getWordsPerRow();
+		long[] words = screen.getScreen();
+		if (image == null || image.getWidth() != width || image.getHeight() != height) {
+			image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+			shown = new long[words.length];
+			// Make every row different so that all of them are written
+			for (int i = 0; i < shown.length; i++) {
+				shown[i] = ~words[i];
+			}
+		}
+		for (int y = 0; y < height; y++) {
+			int start = y * wordsPerRow;
+			boolean changed = false;
+			for (int j = start; j < start + wordsPerRow; j++) {
+				if (words[j] != shown[j]) {
+					changed = true;
+				}
+			}
+			if (!changed) {
+				continue;
+			}
+			int pixel = y * width;
+			for (int j = start; j < start + wordsPerRow; j++) {
+				long word = words[j];
+				shown[j] = word;
+				for (int bit = 0; bit < 64; bit++) {
+					pixels[pixel++] = word < 0 ? ON : OFF;
+					word <<= 1;
+				}
+			}
+		}
+	}
+
+	@Override
+	public void paintComponent(Graphics g) {
+		updateImage(frames.acquire());
+		Graphics2D g2 = (Graphics2D) g;
+		int cellWidth = getWidth() / image.getWidth();
+		int cellHeight = getHeight() / image.getHeight();
+		int drawnWidth = cellWidth * image.getWidth();
+		int drawnHeight = cellHeight * image.getHeight();
+		g2.setColor(Color.black);
+		g2.fillRect(drawnWidth, 0, getWidth() - drawnWidth, getHeight());
+		g2.fillRect(0, drawnHeight, drawnWidth, getHeight() - drawnHeight);
+		g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+		g2.drawImage(image, 0, 0, drawnWidth, drawnHeight, null);
+	}
+}
@@ -3,7 +3,10 @@ package com.tycoon177.chip8.ui;
 import java.awt.BorderLayout;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
+import java.io.File;
+import java.io.IOException;
 
+import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JMenu;
 import javax.swing.JMenuBar;
@@ -11,7 +14,9 @@ import javax.swing.JMenuItem;
 import javax.swing.JPanel;
 
 import com.tycoon177.chip8.system.Computer;
-import com.tycoon177.chip8.system.Display;
+import com.tycoon177.chip8.system.FrameExchange;
+import com.tycoon177.chip8.system.InputReplay;
+import com.tycoon177.chip8.system.Rom;
 
 public class SystemDisplay extends JFrame implements KeyListener {
 	/**
@@ -19,16 +24,21 @@ public class SystemDisplay extends JFrame implements KeyListener {
 	 */
 	private static final long serialVersionUID = -7868537628790047711L;
 	private Computer computer;
-	private Display screen;
+	private ScreenPanel screen;
+	private KeyboardMapping mapping;
+	private File libraryDirectory = new File(".");
 
 	public SystemDisplay(Computer computer) {
 		super("CHIP-8 Display");
 		this.computer = computer;
-		this.screen = computer.getDisplay();
+		FrameExchange frames = new FrameExchange(computer.getDisplay());
+		this.screen = new ScreenPanel(frames);
+		this.mapping = new KeyboardMapping();
+		frames.addDisplayListener(screen);
 		JPanel panel = new JPanel(new BorderLayout(10, 10));
 		setContentPane(panel);
 		getContentPane().add(screen, BorderLayout.CENTER);
-		getContentPane().add(new KeyboardPanel(computer.getKeyboard()), BorderLayout.SOUTH);
+		getContentPane().add(new KeyboardPanel(computer.getKeyInput()), BorderLayout.SOUTH);
 		getContentPane().add(new DebugPanel(computer), BorderLayout.NORTH);
 		makeMenuBar();
 		pack();
@@ -42,26 +52,134 @@ public class SystemDisplay extends JFrame implements KeyListener {
 		JMenuBar bar = new JMenuBar();
 		JMenu file = new JMenu("File");
 		JMenuItem loadRom = new JMenuItem("Load Rom");
+		JMenuItem library = new JMenuItem("Rom Library");
+		JMenuItem record = new JMenuItem("Record Input");
+		JMenuItem stopRecording = new JMenuItem("Stop Recording");
+		JMenuItem replay = new JMenuItem("Replay Input");
 		file.add(loadRom);
+		file.add(library);
+		file.addSeparator();
+		file.add(record);
+		file.add(stopRecording);
+		file.add(replay);
 		bar.add(file);
-		loadRom.addActionListener(e->computer.loadRom());
+		loadRom.addActionListener(e->loadRom());
+		library.addActionListener(e->openLibrary());
+		record.addActionListener(e->recordInput());
+		stopRecording.addActionListener(e->stopRecording());
+		replay.addActionListener(e->replayInput());
 		setJMenuBar(bar);
 	}
 
+	/**
+	 * Opens a JFileChooser so that you can choose the rom file graphically
+	 */
+	private void loadRom() {
+		JFileChooser chooser = new JFileChooser();
+		chooser.setCurrentDirectory(new File("."));
+		int returnVal = chooser.showOpenDialog(this);
+
+		if (returnVal == JFileChooser.APPROVE_OPTION) {
+			try {
+				Rom rom = new Rom(chooser.getSelectedFile().getAbsolutePath());
+				computer.loadRom(rom);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Opens the rom library so that a rom can be picked from the catalog of a
+	 * directory
+	 */
+	private void openLibrary() {
+		LibraryDialog dialog = new LibraryDialog(this, libraryDirectory);
+		dialog.setVisible(true);
+		if (dialog.getDirectory() != null) {
+			libraryDirectory = dialog.getDirectory();
+		}
+		if (dialog.getChosen() != null) {
+			try {
+				computer.loadRom(dialog.getChosen().load());
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		dialog.dispose();
+	}
+
+	/**
+	 * Opens a JFileChooser to choose the file that input is recorded to, and
+	 * starts recording from the current state
+	 */
+	private void recordInput() {
+		JFileChooser chooser = new JFileChooser();
+		chooser.setCurrentDirectory(new File("."));
+		int returnVal = chooser.showSaveDialog(this);
+
+		if (returnVal == JFileChooser.APPROVE_OPTION) {
+			boolean running = computer.isRunning();
+			computer.pause();
+			try {
+				computer.startRecording(chooser.getSelectedFile());
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			if (running) {
+				computer.resume();
+			}
+		}
+	}
+
+	/**
+	 * Stops recording input
+	 */
+	private void stopRecording() {
+		boolean running = computer.isRunning();
+		computer.pause();
+		computer.stopRecording();
+		if (running) {
+			computer.resume();
+		}
+	}
+
+	/**
+	 * Opens a JFileChooser to choose a recording of input and plays it back
+	 */
+	private void replayInput() {
+		JFileChooser chooser = new JFileChooser();
+		chooser.setCurrentDirectory(new File("."));
+		int returnVal = chooser.showOpenDialog(this);
+
+		if (returnVal == JFileChooser.APPROVE_OPTION) {
+			try {
+				InputReplay replay = new InputReplay(chooser.getSelectedFile());
+				boolean running = computer.isRunning();
+				computer.pause();
+				computer.replay(replay);
+				if (running) {
+					computer.resume();
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
 	@Override
 	public void keyPressed(KeyEvent e) {
-		System.out.println("Key pressed");
-		int key = computer.getKeyboard().standardKeyboardToHex(e.getKeyCode());
+		int key = mapping.standardKeyboardToHex(e.getKeyCode());
 		if (key != -1) {
-			computer.getKeyboard().setKeyPressed(key, true);
+			computer.getKeyInput().setKeyPressed(key, true);
 		}
 	}
 
 	@Override
 	public void keyReleased(KeyEvent e) {
-		int key = computer.getKeyboard().standardKeyboardToHex(e.getKeyCode());
+		int key = mapping.standardKeyboardToHex(e.getKeyCode());
 		if (key != -1) {
-			computer.getKeyboard().setKeyPressed(key, false);
+			computer.getKeyInput().setKeyPressed(key, false);
 		}
 	}
 